@@ -0,0 +1,151 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Micro-benchmark comparing the old Gson tree handling of a request/response round trip
+ * with RpcCodec. Each call decodes a request line into typed args and encodes a reply,
+ * over a mix shaped like agent traffic: mostly argument-free queries, some actions with
+ * arguments, and the occasional batch. Reports time and bytes allocated per call.
+ *
+ * Compile together with DreambotShim/src and Gson and run: java CodecBenchmark [iterations]
+ */
+public class CodecBenchmark {
+    
+    private static final String[] REQUESTS = {
+        "{\"id\":\"101\",\"method\":\"getPlayerX\",\"args\":[]}",
+        "{\"id\":\"102\",\"method\":\"getPlayerY\",\"args\":[]}",
+        "{\"id\":\"103\",\"method\":\"isPlayerMoving\",\"args\":[]}",
+        "{\"id\":\"104\",\"method\":\"getInventoryCount\",\"args\":[]}",
+        "{\"id\":\"105\",\"method\":\"inventoryContainsItem\",\"args\":[\"Raw shrimps\",false]}",
+        "{\"id\":\"106\",\"method\":\"getSkillLevel\",\"args\":[\"FISHING\"]}",
+        "{\"id\":\"107\",\"method\":\"walkToLocation\",\"args\":[3222,3218,0],\"timeoutMs\":30000}",
+        "{\"id\":\"108\",\"method\":\"withdrawItem\",\"args\":[\"Lobster\",5]}",
+        "{\"id\":\"109\",\"method\":\"calculate\",\"args\":[10.5,5,\"add\"]}",
+        "{\"id\":\"110\",\"batch\":[{\"method\":\"getPlayerX\",\"args\":[]},{\"method\":\"getPlayerY\",\"args\":[]},"
+                + "{\"method\":\"bankIsOpen\",\"args\":[]}]}",
+    };
+    
+    private static final Object[] RESULTS = {
+        3222, 3218, false, 12, true, 42,
+        "Walking to (3222, 3218, 0) - SUCCESS (arrived after 3 attempts)",
+        "Withdrew 5 x Lobster", 15.5, null,
+    };
+    
+    private static final Gson gson = new Gson();
+    private static long sink;
+    
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        int calls = iterations * REQUESTS.length;
+        
+        for (int round = 0; round < 3; round++) {
+            // Earlier rounds are warmup for the JIT; the last round is the one to read
+            long treeBytes = threads.getThreadAllocatedBytes(threadId);
+            long treeTime = measure(iterations, CodecBenchmark::gsonTreeRoundTrip);
+            treeBytes = threads.getThreadAllocatedBytes(threadId) - treeBytes;
+            
+            long codecBytes = threads.getThreadAllocatedBytes(threadId);
+            long codecTime = measure(iterations, CodecBenchmark::codecRoundTrip);
+            codecBytes = threads.getThreadAllocatedBytes(threadId) - codecBytes;
+            
+            System.out.printf("round %d: gson tree %.0f ns/call %d B/call, codec %.0f ns/call %d B/call%n",
+                    round, treeTime / (double) calls, treeBytes / calls,
+                    codecTime / (double) calls, codecBytes / calls);
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+    
+    private interface Body {
+        void run(String request, Object result) throws Exception;
+    }
+    
+    private static long measure(int iterations, Body body) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (int r = 0; r < REQUESTS.length; r++) {
+                body.run(REQUESTS[r], RESULTS[r]);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+    
+    private static void codecRoundTrip(String line, Object result) throws Exception {
+        RpcRequest request = RpcCodec.decode(line);
+        String reply;
+        if (request.isBatch()) {
+            java.util.List<RpcResponse> results = new java.util.ArrayList<>();
+            for (RpcRequest call : request.getBatch()) {
+                results.add(RpcResponse.ok(call.getId(), call.getMethod(), 0));
+            }
+            reply = RpcCodec.encode(RpcResponse.batch(request.getId(), request.getMethod(), results));
+        } else {
+            sink += request.getArgs().length;
+            reply = RpcCodec.encode(RpcResponse.ok(request.getId(), request.getMethod(), result));
+        }
+        sink += reply.length();
+    }
+    
+    /**
+     * The parse and reply path PipeManager used before RpcCodec
+     */
+    private static void gsonTreeRoundTrip(String line, Object result) {
+        JsonObject request = gson.fromJson(line, JsonObject.class);
+        String id = request.has("id") ? request.get("id").getAsString() : null;
+        JsonObject response;
+        if (request.has("batch")) {
+            JsonArray results = new JsonArray();
+            for (JsonElement element : request.getAsJsonArray("batch")) {
+                JsonObject call = element.getAsJsonObject();
+                sink += parseArgs(call.getAsJsonArray("args")).length;
+                results.add(buildResponse(null, call.get("method").getAsString(), 0));
+            }
+            response = new JsonObject();
+            response.addProperty("id", id);
+            response.addProperty("method", "batch");
+            response.addProperty("status", "ok");
+            response.add("results", results);
+        } else {
+            sink += parseArgs(request.getAsJsonArray("args")).length;
+            response = buildResponse(id, request.get("method").getAsString(), result);
+        }
+        sink += gson.toJson(response).length();
+    }
+    
+    private static Object[] parseArgs(JsonArray argsArray) {
+        Object[] args = new Object[argsArray.size()];
+        for (int i = 0; i < argsArray.size(); i++) {
+            JsonElement element = argsArray.get(i);
+            if (element.getAsJsonPrimitive().isString()) {
+                args[i] = element.getAsString();
+            } else if (element.getAsJsonPrimitive().isNumber()) {
+                args[i] = element.getAsString().contains(".") ? (Object) element.getAsDouble() : (Object) element.getAsInt();
+            } else {
+                args[i] = element.getAsBoolean();
+            }
+        }
+        return args;
+    }
+    
+    private static JsonObject buildResponse(String id, String method, Object result) {
+        JsonObject response = new JsonObject();
+        if (id != null) {
+            response.addProperty("id", id);
+        }
+        response.addProperty("method", method);
+        response.addProperty("status", "ok");
+        if (result instanceof Boolean) {
+            response.addProperty("result", (Boolean) result);
+        } else if (result instanceof Number) {
+            response.addProperty("result", (Number) result);
+        } else {
+            response.addProperty("result", String.valueOf(result));
+        }
+        return response;
+    }
+}
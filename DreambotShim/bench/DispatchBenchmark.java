@@ -0,0 +1,122 @@
+import java.lang.reflect.Method;
+
+/**
+ * Micro-benchmark comparing the old per-call reflective lookup in PipeManager with the
+ * precompiled DispatchTable. Runs against a stand-in target with the same parameter
+ * shapes as DreamBotAPIWrapper so no DreamBot client is needed.
+ *
+ * Compile together with DreambotShim/src and run: java DispatchBenchmark [iterations]
+ */
+public class DispatchBenchmark {
+    
+    /**
+     * Stand-in for DreamBotAPIWrapper with cheap method bodies
+     */
+    public static class Target {
+        private int counter;
+        
+        public int getPlayerX() {
+            return counter++;
+        }
+        
+        public double calculate(double a, double b, String operation) {
+            return a + b + operation.length();
+        }
+        
+        public String withdrawItem(String itemName, int count) {
+            return itemName;
+        }
+        
+        public boolean inventoryContainsItem(String itemName, boolean useItemId) {
+            return useItemId;
+        }
+        
+        public String depositAllExcept(String... itemsToKeep) {
+            return itemsToKeep.length > 0 ? itemsToKeep[0] : "";
+        }
+    }
+    
+    private static final Object[][] CALLS = {
+        {"getPlayerX", new Object[0]},
+        {"calculate", new Object[]{10, 5, "add"}},
+        {"withdrawItem", new Object[]{"Lobster", 5}},
+        {"inventoryContainsItem", new Object[]{"Lobster", false}},
+        {"depositAllExcept", new Object[]{"Lobster", "Coins"}},
+    };
+    
+    private static long sink;
+    
+    public static void main(String[] args) throws Throwable {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        Target target = new Target();
+        DispatchTable table = DispatchTable.build(Target.class, target);
+        
+        for (int round = 0; round < 3; round++) {
+            // Earlier rounds are warmup for the JIT; the last round is the one to read
+            long reflective = measure(iterations, () -> {
+                for (Object[] call : CALLS) {
+                    consume(reflectiveCall(target, (String) call[0], (Object[]) call[1]));
+                }
+            });
+            long handles = measure(iterations, () -> {
+                for (Object[] call : CALLS) {
+                    consume(table.invoke((String) call[0], (Object[]) call[1]));
+                }
+            });
+            System.out.printf("round %d: reflective %.1f ns/call, dispatch table %.1f ns/call%n",
+                    round, reflective / (double) (iterations * CALLS.length),
+                    handles / (double) (iterations * CALLS.length));
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+    
+    private interface Body {
+        void run() throws Throwable;
+    }
+    
+    private static long measure(int iterations, Body body) throws Throwable {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            body.run();
+        }
+        return System.nanoTime() - start;
+    }
+    
+    private static void consume(Object result) {
+        sink += result == null ? 0 : result.hashCode();
+    }
+    
+    /**
+     * The lookup PipeManager.callMethod performed on every request before the dispatch table
+     */
+    private static Object reflectiveCall(Object target, String methodName, Object... args) throws Exception {
+        Class<?>[] paramTypes = new Class<?>[args.length];
+        for (int i = 0; i < args.length; i++) {
+            paramTypes[i] = args[i].getClass();
+            if (paramTypes[i] == Integer.class) paramTypes[i] = int.class;
+            else if (paramTypes[i] == Double.class) paramTypes[i] = double.class;
+            else if (paramTypes[i] == Boolean.class) paramTypes[i] = boolean.class;
+        }
+        Method method = null;
+        try {
+            method = target.getClass().getDeclaredMethod(methodName, paramTypes);
+        } catch (NoSuchMethodException e) {
+            for (Method m : target.getClass().getDeclaredMethods()) {
+                if (m.getName().equals(methodName) && m.getParameterCount() == args.length) {
+                    method = m;
+                    break;
+                }
+            }
+        }
+        if (method == null) {
+            return null;
+        }
+        method.setAccessible(true);
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalArgumentException e) {
+            // The old path failed for int->double and varargs calls; count them as misses
+            return null;
+        }
+    }
+}
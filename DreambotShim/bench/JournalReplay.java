@@ -0,0 +1,184 @@
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Replays an RPC journal (see RpcJournal) through the dispatcher against a stub of
+ * DreamBotAPIWrapper that answers each call with the result recorded for it, so real
+ * traffic can be fed to dispatcher changes without a game client. Prints the recorded
+ * latency per method next to the replayed dispatch cost, the slowest recorded calls
+ * and any call that no longer dispatches the way it did.
+ *
+ * Compile together with DreambotShim/src and Gson and run:
+ * java JournalReplay journal-directory [max|speed]
+ * "max" (the default) replays back-to-back for three rounds; a number replays once
+ * with the recorded gaps between requests divided by it (1 = real time).
+ */
+public class JournalReplay {
+    
+    private static final int SLOWEST_SHOWN = 10;
+    private static final int DIVERGENCES_SHOWN = 10;
+    
+    /** Result the stub returns for the call being replayed */
+    private static Object recordedResult;
+    private static long sink;
+    
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java JournalReplay journal-directory [max|speed]");
+            return;
+        }
+        List<RpcJournal.Entry> entries = RpcJournal.read(Paths.get(args[0]));
+        double speed = args.length > 1 && !args[1].equalsIgnoreCase("max") ? Double.parseDouble(args[1]) : 0;
+        
+        List<RpcJournal.Entry> requests = new ArrayList<>();
+        Map<Long, RpcJournal.Entry> replies = new HashMap<>();
+        for (RpcJournal.Entry entry : entries) {
+            if (entry.isRequest()) {
+                requests.add(entry);
+            } else {
+                replies.put(entry.getCall(), entry);
+            }
+        }
+        if (requests.isEmpty()) {
+            System.out.println("No requests in " + args[0]);
+            return;
+        }
+        printSummary(requests, replies);
+        printRecordedLatencies(requests, replies);
+        printSlowest(requests, replies);
+        
+        RpcDispatcher dispatcher = DispatchTable.stub(DreamBotAPIWrapper.class, (method, callArgs) -> recordedResult);
+        int rounds = speed > 0 ? 1 : 3;
+        for (int round = 0; round < rounds; round++) {
+            // Earlier rounds are warmup for the JIT; the last round is the one to read
+            ReplayStats stats = replay(dispatcher, requests, replies, speed);
+            System.out.printf("round %d: %d calls in %.1f ms, %.0f ns/call dispatch, %d diverged%n",
+                    round, stats.calls, stats.wallNanos / 1e6, stats.dispatchNanos / (double) Math.max(1, stats.calls),
+                    stats.divergences.size());
+            if (round == rounds - 1) {
+                stats.print();
+            }
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+    
+    /**
+     * Invoke every journaled call in order; with a speed, wait out the recorded gaps first
+     */
+    private static ReplayStats replay(RpcDispatcher dispatcher, List<RpcJournal.Entry> requests,
+                                      Map<Long, RpcJournal.Entry> replies, double speed) throws InterruptedException {
+        ReplayStats stats = new ReplayStats();
+        long firstMicros = requests.get(0).getTimestampMicros();
+        long start = System.nanoTime();
+        for (RpcJournal.Entry request : requests) {
+            if (speed > 0) {
+                long dueNanos = start + (long) ((request.getTimestampMicros() - firstMicros) * 1000 / speed);
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+                }
+            }
+            RpcJournal.Entry reply = replies.get(request.getCall());
+            boolean single = request.getCallMethods().size() == 1;
+            recordedResult = single && reply != null ? reply.getValue() : null;
+            for (int i = 0; i < request.getCallMethods().size(); i++) {
+                String method = request.getCallMethods().get(i);
+                Object[] callArgs = request.getCallArgs().get(i);
+                if (dispatcher.kindOf(method) == null) {
+                    // The shim's own methods (subscribe, shimStats) never reach the wrapper
+                    continue;
+                }
+                long callStart = System.nanoTime();
+                try {
+                    Object result = dispatcher.invoke(method, callArgs);
+                    sink += result == null ? 0 : result.hashCode();
+                    stats.dispatchNanos += System.nanoTime() - callStart;
+                } catch (Throwable e) {
+                    stats.dispatchNanos += System.nanoTime() - callStart;
+                    // Calls that failed when recorded are expected to fail again
+                    if (reply == null || RpcResponse.STATUS_OK.equals(reply.getStatus())) {
+                        stats.divergences.add(method + Arrays.toString(callArgs) + ": " + e);
+                    }
+                }
+                stats.calls++;
+            }
+        }
+        stats.wallNanos = System.nanoTime() - start;
+        return stats;
+    }
+    
+    private static void printSummary(List<RpcJournal.Entry> requests, Map<Long, RpcJournal.Entry> replies) {
+        TreeSet<String> sessions = new TreeSet<>();
+        for (RpcJournal.Entry request : requests) {
+            sessions.add(request.getSession());
+        }
+        double spanSeconds = (requests.get(requests.size() - 1).getTimestampMicros()
+                - requests.get(0).getTimestampMicros()) / 1e6;
+        System.out.printf("%d requests, %d replies, %d sessions %s over %.1f s%n",
+                requests.size(), replies.size(), sessions.size(), sessions, spanSeconds);
+    }
+    
+    /**
+     * Recorded reply latency per method: count, median, 99th percentile and worst
+     */
+    private static void printRecordedLatencies(List<RpcJournal.Entry> requests, Map<Long, RpcJournal.Entry> replies) {
+        Map<String, List<Long>> byMethod = new TreeMap<>();
+        for (RpcJournal.Entry request : requests) {
+            RpcJournal.Entry reply = replies.get(request.getCall());
+            if (reply != null) {
+                byMethod.computeIfAbsent(request.getMethod(), m -> new ArrayList<>()).add(reply.getLatencyMicros());
+            }
+        }
+        System.out.println("recorded latency (ms):");
+        for (Map.Entry<String, List<Long>> method : byMethod.entrySet()) {
+            List<Long> latencies = method.getValue();
+            Collections.sort(latencies);
+            System.out.printf("  %-28s %6d calls  p50 %8.2f  p99 %8.2f  max %8.2f%n", method.getKey(), latencies.size(),
+                    percentile(latencies, 0.50) / 1000.0, percentile(latencies, 0.99) / 1000.0,
+                    latencies.get(latencies.size() - 1) / 1000.0);
+        }
+    }
+    
+    private static void printSlowest(List<RpcJournal.Entry> requests, Map<Long, RpcJournal.Entry> replies) {
+        List<RpcJournal.Entry> answered = new ArrayList<>();
+        for (RpcJournal.Entry request : requests) {
+            if (replies.containsKey(request.getCall())) {
+                answered.add(request);
+            }
+        }
+        answered.sort(Comparator.comparingLong((RpcJournal.Entry r) -> replies.get(r.getCall()).getLatencyMicros()).reversed());
+        System.out.println("slowest recorded calls:");
+        for (RpcJournal.Entry request : answered.subList(0, Math.min(SLOWEST_SHOWN, answered.size()))) {
+            RpcJournal.Entry reply = replies.get(request.getCall());
+            System.out.printf("  %9.2f ms  %-7s %s %s %s on %s%n", reply.getLatencyMicros() / 1000.0, reply.getStatus(),
+                    request.getSession(), request.getMethod(),
+                    request.getCallMethods().size() == 1 ? Arrays.toString(request.getCallArgs().get(0)) : "",
+                    reply.getThread());
+        }
+    }
+    
+    private static long percentile(List<Long> sorted, double fraction) {
+        return sorted.get(Math.min(sorted.size() - 1, (int) (sorted.size() * fraction)));
+    }
+    
+    private static final class ReplayStats {
+        long calls;
+        long dispatchNanos;
+        long wallNanos;
+        final List<String> divergences = new ArrayList<>();
+        
+        void print() {
+            for (String divergence : divergences.subList(0, Math.min(DIVERGENCES_SHOWN, divergences.size()))) {
+                System.out.println("  diverged: " + divergence);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Micro-benchmark comparing JSON lines with binary frames for a state polling mix.
+ * Each call encodes a request on the client side, decodes it as the shim does, encodes
+ * the typed reply and decodes it again, so both directions are counted. Reports time,
+ * wire bytes and bytes allocated per call.
+ *
+ * Compile together with DreambotShim/src and Gson and run: java WireFormatBenchmark [iterations]
+ */
+public class WireFormatBenchmark {
+    
+    private static final List<String> METHOD_TABLE = List.of(
+            "getPlayerX", "getPlayerY", "isPlayerMoving", "getInventoryCount", "inventoryContainsItem", "getSkillLevel");
+    
+    private static final String[] METHODS = {
+        "getPlayerX", "getPlayerY", "isPlayerMoving", "getInventoryCount", "inventoryContainsItem", "getSkillLevel",
+    };
+    
+    private static final Object[][] ARGS = {
+        {}, {}, {}, {}, {"Raw shrimps", false}, {"FISHING"},
+    };
+    
+    private static final Object[] RESULTS = {3222, 3218, false, 12, true, 42};
+    
+    private static final Gson gson = new Gson();
+    private static long sink;
+    private static long wireBytes;
+    
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        int calls = iterations * METHODS.length;
+        
+        for (int round = 0; round < 3; round++) {
+            // Earlier rounds are warmup for the JIT; the last round is the one to read
+            wireBytes = 0;
+            long jsonBytes = threads.getThreadAllocatedBytes(threadId);
+            long jsonTime = measure(iterations, WireFormatBenchmark::jsonRoundTrip);
+            jsonBytes = threads.getThreadAllocatedBytes(threadId) - jsonBytes;
+            long jsonWire = wireBytes;
+            
+            wireBytes = 0;
+            long binaryBytes = threads.getThreadAllocatedBytes(threadId);
+            long binaryTime = measure(iterations, WireFormatBenchmark::binaryRoundTrip);
+            binaryBytes = threads.getThreadAllocatedBytes(threadId) - binaryBytes;
+            long binaryWire = wireBytes;
+            
+            System.out.printf("round %d: json %.0f ns/call %d wire B/call %d B/call, "
+                            + "binary %.0f ns/call %d wire B/call %d B/call%n",
+                    round, jsonTime / (double) calls, jsonWire / calls, jsonBytes / calls,
+                    binaryTime / (double) calls, binaryWire / calls, binaryBytes / calls);
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+    
+    private interface Body {
+        void run(int id, int method) throws Exception;
+    }
+    
+    private static long measure(int iterations, Body body) throws Exception {
+        long start = System.nanoTime();
+        int id = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (int m = 0; m < METHODS.length; m++) {
+                body.run(id++, m);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+    
+    private static void jsonRoundTrip(int id, int method) throws Exception {
+        StringBuilder line = new StringBuilder(64);
+        line.append("{\"id\":\"").append(id).append("\",\"method\":\"").append(METHODS[method]).append("\",\"args\":[");
+        Object[] args = ARGS[method];
+        for (int i = 0; i < args.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            line.append(args[i] instanceof String ? "\"" + args[i] + "\"" : String.valueOf(args[i]));
+        }
+        line.append("]}");
+        String requestLine = line.toString();
+        
+        RpcRequest request = RpcCodec.decode(requestLine);
+        String reply = RpcCodec.encode(RpcResponse.ok(request.getId(), request.getMethod(), RESULTS[method]));
+        // Client side: parse the reply line the way NamedPipeShim does
+        JsonObject decoded = gson.fromJson(reply, JsonObject.class);
+        sink += request.getArgs().length + decoded.size();
+        wireBytes += requestLine.getBytes(StandardCharsets.UTF_8).length + 1
+                + reply.getBytes(StandardCharsets.UTF_8).length + 1;
+    }
+    
+    private static void binaryRoundTrip(int id, int method) throws Exception {
+        byte[] call = BinaryCodec.encodeCall(id, method, 0, ARGS[method]);
+        RpcRequest request = BinaryCodec.decodeCall(ByteBuffer.wrap(call, 4, call.length - 4).slice(), METHOD_TABLE);
+        byte[] reply = BinaryCodec.encodeResponse(RpcResponse.ok(request.getId(), request.getMethod(), RESULTS[method]));
+        RpcResponse decoded = BinaryCodec.decodeResponse(ByteBuffer.wrap(reply, 4, reply.length - 4).slice());
+        sink += request.getArgs().length + (decoded.getResult() != null ? 1 : 0);
+        wireBytes += call.length + reply.length;
+    }
+}
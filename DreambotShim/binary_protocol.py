@@ -0,0 +1,363 @@
+#!/usr/bin/env python3
+"""
+Reference client for the shim's wire formats (see BinaryCodec.java for the frame layout).
+Connects to the Unix socket transport, or to a private FIFO pair of the named pipe
+transport, negotiates a format with the "hello" handshake and then speaks JSON lines
+or length-prefixed binary frames. Requests can be pipelined up to the server's
+advertised maxInFlight window. With several shims on one host, discover() lists them
+from the instance registry and ShimClient(instance=...) picks one. With heartbeat=True
+the client and shim exchange heartbeats so either side notices the other dying, and
+reconnect() opens a new connection that takes the old session's subscriptions back.
+"""
+
+import json
+import os
+import socket
+import struct
+import threading
+import time
+
+SOCKET_PATH = "/tmp/dreambot_shim.sock"
+REGISTRY_PATH = "/tmp/dreambot_shim_instances.json"
+DEFAULT_INSTANCE = "default"
+FORMAT_BINARY = "binary"
+FORMAT_JSON = "json"
+
+FRAME_CALL = 1
+FRAME_RESPONSE = 2
+FRAME_EVENT = 3
+FRAME_PROGRESS = 4
+FRAME_HEARTBEAT = 5
+
+FLAG_PROGRESS = 1
+
+TAG_NULL = 0
+TAG_INT = 1
+TAG_LONG = 2
+TAG_DOUBLE = 3
+TAG_BOOLEAN = 4
+TAG_STRING = 5
+
+STATUS_NAMES = {0: "ok", 1: "error", 2: "timeout", 3: "busy"}
+
+INT_MIN = -(1 << 31)
+INT_MAX = (1 << 31) - 1
+
+
+def encode_value(value):
+    if value is None:
+        return struct.pack(">b", TAG_NULL)
+    if isinstance(value, bool):
+        return struct.pack(">bb", TAG_BOOLEAN, 1 if value else 0)
+    if isinstance(value, int):
+        if INT_MIN <= value <= INT_MAX:
+            return struct.pack(">bi", TAG_INT, value)
+        return struct.pack(">bq", TAG_LONG, value)
+    if isinstance(value, float):
+        return struct.pack(">bd", TAG_DOUBLE, value)
+    data = str(value).encode("utf-8")
+    return struct.pack(">bi", TAG_STRING, len(data)) + data
+
+
+def decode_value(data, offset):
+    """Return (value, next offset)."""
+    (tag,) = struct.unpack_from(">b", data, offset)
+    offset += 1
+    if tag == TAG_NULL:
+        return None, offset
+    if tag == TAG_INT:
+        return struct.unpack_from(">i", data, offset)[0], offset + 4
+    if tag == TAG_LONG:
+        return struct.unpack_from(">q", data, offset)[0], offset + 8
+    if tag == TAG_DOUBLE:
+        return struct.unpack_from(">d", data, offset)[0], offset + 8
+    if tag == TAG_BOOLEAN:
+        return data[offset] != 0, offset + 1
+    if tag == TAG_STRING:
+        (length,) = struct.unpack_from(">i", data, offset)
+        offset += 4
+        return bytes(data[offset:offset + length]).decode("utf-8"), offset + length
+    raise ValueError("Unknown value tag %d" % tag)
+
+
+def encode_call(request_id, ordinal, args=(), timeout_ms=0, flags=0):
+    body = struct.pack(">biHiBb", FRAME_CALL, request_id, ordinal, timeout_ms, flags, len(args))
+    body += b"".join(encode_value(arg) for arg in args)
+    return struct.pack(">i", len(body)) + body
+
+
+def decode_frame(body):
+    """Decode a frame body (without its length prefix) into a dict."""
+    (frame_type,) = struct.unpack_from(">b", body, 0)
+    if frame_type == FRAME_RESPONSE:
+        request_id, status = struct.unpack_from(">ib", body, 1)
+        value, _ = decode_value(body, 6)
+        reply = {"id": str(request_id), "status": STATUS_NAMES.get(status, "error")}
+        reply["result" if status == 0 else "error"] = value
+        return reply
+    if frame_type == FRAME_EVENT:
+        value, _ = decode_value(body, 1)
+        return json.loads(value)
+    if frame_type == FRAME_PROGRESS:
+        request_id, count = struct.unpack_from(">iB", body, 1)
+        offset = 6
+        progress = {}
+        for _ in range(count):
+            name, offset = decode_value(body, offset)
+            progress[name], offset = decode_value(body, offset)
+        return {"id": str(request_id), "status": "progress", "progress": progress}
+    if frame_type == FRAME_HEARTBEAT:
+        return {"event": "heartbeat"}
+    raise ValueError("Unexpected frame type %d" % frame_type)
+
+
+def endpoints_for(instance=DEFAULT_INSTANCE):
+    """Endpoint paths of a shim instance (see ShimInstance.java)."""
+    prefix = "/tmp/dreambot_shim" if instance == DEFAULT_INSTANCE else "/tmp/dreambot_shim_%s" % instance
+    return {
+        "pipe": prefix + "_pipe",
+        "responsePipe": prefix + "_response_pipe",
+        "sessionsPipe": prefix + "_pipe.sessions",
+        "socket": prefix + ".sock",
+        "state": prefix + "_state.bin",
+    }
+
+
+def discover(registry=REGISTRY_PATH):
+    """Live shims on this host from the instance registry, as {id: endpoints}."""
+    try:
+        with open(registry) as f:
+            instances = json.load(f).get("instances", [])
+    except (OSError, ValueError):
+        return {}
+    live = {}
+    for entry in instances:
+        try:
+            os.kill(entry["pid"], 0)
+        except ProcessLookupError:
+            continue
+        except PermissionError:
+            pass
+        live[entry["id"]] = entry["endpoints"]
+    return live
+
+
+class ShimClient:
+    """Blocking client; call() waits for each reply, pipeline() streams a list of calls.
+    Connects to the socket transport, or with fifo_session="<name>" opens a private
+    pipe pair on the FIFO transport so several clients can share one shim. instance
+    selects the shim when several run on the host. With heartbeat=True a background
+    thread keeps the session alive while idle, and on the socket transport a shim that
+    stays silent past its peer timeout raises ConnectionError instead of hanging."""
+
+    def __init__(self, path=None, prefer_binary=True, fifo_session=None, instance=None, heartbeat=False):
+        self._endpoints = endpoints_for(instance or DEFAULT_INSTANCE)
+        if path is None:
+            path = self._endpoints["socket"] if instance else SOCKET_PATH
+        self._path = path
+        self._fifo_session = fifo_session
+        self._reconnects = 0
+        self._prefer_binary = prefer_binary
+        self._heartbeat = heartbeat
+        self._send_lock = threading.Lock()
+        self._next_id = 1
+        self.bytes_sent = 0
+        self.bytes_received = 0
+        self.resume_token = None
+        self.resumed = []
+        self._connect()
+
+    def _connect(self):
+        """Open the transport and handshake, resuming the previous session if there was one."""
+        self._sock = None
+        self._reply_keepalive = None
+        self._closed = False
+        if self._fifo_session is None:
+            self._sock = socket.socket(socket.AF_UNIX, socket.SOCK_STREAM)
+            self._sock.connect(self._path)
+            self._file = self._sock.makefile("rb")
+            self._out = self._sock.makefile("wb")
+        else:
+            # A fresh pair each time; the old one is removed once the shim sees it closed
+            name = self._fifo_session if self._reconnects == 0 else "%s-%d" % (self._fifo_session, self._reconnects)
+            self._open_fifo_session(name)
+        self.format = FORMAT_JSON
+        offered = [FORMAT_BINARY, FORMAT_JSON] if self._prefer_binary else [FORMAT_JSON]
+        if self._heartbeat:
+            offered.append("heartbeat")
+        if self.resume_token:
+            offered.append("resume=" + self.resume_token)
+        hello = self.call("hello", *offered)
+        if hello.get("status") != "ok":
+            raise RuntimeError("Handshake failed: %s" % hello.get("error"))
+        info = json.loads(hello["result"])
+        self.format = info["format"]
+        self.methods = info["methods"]
+        self.max_in_flight = info.get("maxInFlight", 1)
+        self.session = info.get("session")
+        self.resume_token = info.get("resumeToken")
+        self.resumed = info.get("resumed", [])
+        self._ordinals = {name: i for i, name in enumerate(self.methods)}
+        if self._heartbeat and "heartbeatMs" in info:
+            interval = info["heartbeatMs"] / 1000.0
+            if self._sock is not None:
+                # The shim sends at least a heartbeat every interval, so silence past its timeout means it is gone
+                self._sock.settimeout(info["peerTimeoutMs"] / 1000.0)
+            threading.Thread(target=self._heartbeat_loop, args=(interval,), daemon=True).start()
+
+    def reconnect(self, attempts=10, delay=1.0):
+        """Drop the current connection and open a new one, taking the old session's
+        subscriptions back. Replies still outstanding on the old connection are lost."""
+        self.close()
+        for attempt in range(attempts):
+            try:
+                self._reconnects += 1
+                self._connect()
+                return
+            except OSError:
+                if attempt == attempts - 1:
+                    raise
+                time.sleep(delay)
+
+    def _heartbeat_loop(self, interval):
+        out = self._out
+        while not self._closed and out is self._out:
+            time.sleep(interval)
+            try:
+                if self.format == FORMAT_BINARY:
+                    self._send(struct.pack(">ib", 1, FRAME_HEARTBEAT))
+                else:
+                    self._send(b'{"method": "heartbeat"}\n')
+            except (OSError, ValueError):
+                return
+
+    def _open_fifo_session(self, name):
+        request_pipe = "%s.%s" % (self._endpoints["pipe"], name)
+        reply_pipe = "%s.%s" % (self._endpoints["responsePipe"], name)
+        for pipe in (request_pipe, reply_pipe):
+            if not os.path.exists(pipe):
+                os.mkfifo(pipe)
+        with open(self._endpoints["sessionsPipe"], "wb") as sessions:
+            sessions.write(("open %s\n" % name).encode("utf-8"))
+        # Open the reply end without waiting for the shim, which opens it on the first reply,
+        # and hold a writer of our own so reads block instead of seeing end of file until then
+        fd = os.open(reply_pipe, os.O_RDONLY | os.O_NONBLOCK)
+        self._reply_keepalive = os.open(reply_pipe, os.O_WRONLY | os.O_NONBLOCK)
+        os.set_blocking(fd, True)
+        self._file = os.fdopen(fd, "rb")
+        self._out = open(request_pipe, "wb")
+
+    def call(self, method, *args, timeout_ms=0, on_progress=None):
+        """Call a method and return the reply as a dict with status and result or error.
+        With on_progress, the shim streams progress and each update's values are
+        passed to it before the reply arrives."""
+        request_id = str(self._take_id())
+        self._send_call(request_id, method, list(args), timeout_ms, on_progress is not None)
+        replies = {}
+        while request_id not in replies:
+            self._read_reply(replies, on_progress)
+        return replies[request_id]
+
+    def pipeline(self, calls):
+        """Send (method, args) calls without waiting, keeping at most max_in_flight
+        outstanding, and return the replies in call order."""
+        replies = {}
+        pending = []
+        for method, args in calls:
+            if len(pending) - len(replies) >= self.max_in_flight:
+                self._read_reply(replies)
+            request_id = str(self._take_id())
+            pending.append(request_id)
+            self._send_call(request_id, method, list(args))
+        while len(replies) < len(pending):
+            self._read_reply(replies)
+        return [replies[request_id] for request_id in pending]
+
+    def _send_call(self, request_id, method, args, timeout_ms=0, progress=False):
+        if self.format == FORMAT_BINARY:
+            flags = FLAG_PROGRESS if progress else 0
+            self._send(encode_call(int(request_id), self._ordinals[method], args, timeout_ms, flags))
+            return
+        request = {"id": request_id, "method": method, "args": args}
+        if timeout_ms:
+            request["timeoutMs"] = timeout_ms
+        if progress:
+            request["progress"] = True
+        self._send((json.dumps(request) + "\n").encode("utf-8"))
+
+    def _read_reply(self, replies, on_progress=None):
+        """Read the next reply into replies by id, skipping events and passing
+        progress frames to on_progress."""
+        while True:
+            reply = self._read_message()
+            if reply.get("status") == "progress":
+                if on_progress is not None:
+                    on_progress(reply["progress"])
+                continue
+            if "id" in reply:
+                replies[reply["id"]] = reply
+                return
+
+    def _read_message(self):
+        try:
+            return self._read_one()
+        except socket.timeout:
+            raise ConnectionError("Shim stopped responding (no heartbeat)")
+
+    def _read_one(self):
+        if self.format == FORMAT_BINARY:
+            header = self._file.read(4)
+            if len(header) < 4:
+                raise ConnectionError("Shim closed the connection")
+            (length,) = struct.unpack(">i", header)
+            body = self._file.read(length)
+            self.bytes_received += 4 + len(body)
+            return decode_frame(body)
+        line = self._file.readline()
+        if not line:
+            raise ConnectionError("Shim closed the connection")
+        self.bytes_received += len(line)
+        return json.loads(line)
+
+    def _send(self, data):
+        with self._send_lock:
+            self._out.write(data)
+            self._out.flush()
+            self.bytes_sent += len(data)
+
+    def _take_id(self):
+        request_id = self._next_id
+        self._next_id += 1
+        return request_id
+
+    def close(self):
+        self._closed = True
+        for closing in (self._out, self._file):
+            try:
+                closing.close()
+            except OSError:
+                pass
+        if self._sock is not None:
+            self._sock.close()
+        if self._reply_keepalive is not None:
+            os.close(self._reply_keepalive)
+
+
+if __name__ == "__main__":
+    polling = ["getPlayerX", "getPlayerY", "isPlayerMoving", "getInventoryCount"]
+    calls = 2000
+    for prefer_binary in (False, True):
+        for pipelined in (False, True):
+            client = ShimClient(prefer_binary=prefer_binary)
+            client.bytes_sent = client.bytes_received = 0
+            start = time.perf_counter()
+            if pipelined:
+                client.pipeline((polling[i % len(polling)], ()) for i in range(calls))
+            else:
+                for i in range(calls):
+                    client.call(polling[i % len(polling)])
+            elapsed = time.perf_counter() - start
+            mode = "pipelined" if pipelined else "sequential"
+            print(f"{client.format} {mode}: {elapsed / calls * 1e6:.1f} us/call, "
+                  f"{client.bytes_sent / calls:.0f} B sent/call, {client.bytes_received / calls:.0f} B received/call")
+            client.close()
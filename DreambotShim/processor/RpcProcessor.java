@@ -0,0 +1,395 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor for @Rpc methods.
+ * For every class declaring @Rpc methods it generates {@code <Class>Dispatcher}, a
+ * switch-based RpcDispatcher that calls the methods directly, picking between overloads
+ * with the same ArgConverters.resolve scoring DispatchTable uses, and writes
+ * {@code rpc-schema.json} describing every exposed method, its scheduling kind,
+ * result cache TTL, parameters and return type.
+ *
+ * Build the processor first, then compile the shim with it on the processor path:
+ *   javac -d out/processor processor/RpcProcessor.java
+ *   javac -processorpath out/processor -processor RpcProcessor -d out/shim -cp ... src/*.java
+ */
+@SupportedAnnotationTypes("Rpc")
+public class RpcProcessor extends AbstractProcessor {
+    
+    private static final String SCHEMA_FILE = "rpc-schema.json";
+    private static final String DEFAULT_KIND = "ACTION";
+    
+    /** Exposed methods grouped by declaring class, kept across rounds for the schema */
+    private final Map<TypeElement, List<ExecutableElement>> services = new LinkedHashMap<>();
+    /** Doc summaries captured while the source trees are still attached */
+    private final Map<ExecutableElement, String> summaries = new HashMap<>();
+    private final Set<String> generated = new HashSet<>();
+    
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+    
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeSchema();
+            return false;
+        }
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.METHOD) {
+                    continue;
+                }
+                ExecutableElement method = (ExecutableElement) element;
+                if (!isExposable(method)) {
+                    continue;
+                }
+                TypeElement owner = (TypeElement) method.getEnclosingElement();
+                services.computeIfAbsent(owner, k -> new ArrayList<>()).add(method);
+                summaries.put(method, summary(method));
+            }
+        }
+        for (Map.Entry<TypeElement, List<ExecutableElement>> service : services.entrySet()) {
+            service.getValue().sort(Comparator
+                    .comparing((ExecutableElement m) -> m.getSimpleName().toString())
+                    .thenComparingInt(m -> m.getParameters().size()));
+            writeDispatcher(service.getKey(), service.getValue());
+        }
+        return true;
+    }
+    
+    /**
+     * Only public instance methods with parameter types ArgConverters understands can be exposed
+     */
+    private boolean isExposable(ExecutableElement method) {
+        if (!method.getModifiers().contains(Modifier.PUBLIC) || method.getModifiers().contains(Modifier.STATIC)) {
+            error(method, "@Rpc methods must be public instance methods");
+            return false;
+        }
+        List<? extends VariableElement> params = method.getParameters();
+        for (int i = 0; i < params.size(); i++) {
+            boolean trailingVarargs = method.isVarArgs() && i == params.size() - 1;
+            String type = typeName(params.get(i).asType());
+            if (converterFor(type, trailingVarargs) == null) {
+                error(params.get(i), "Unsupported @Rpc parameter type " + type);
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private void writeDispatcher(TypeElement owner, List<ExecutableElement> methods) {
+        String ownerName = owner.getSimpleName().toString();
+        String className = ownerName + "Dispatcher";
+        if (!generated.add(className)) {
+            return;
+        }
+        
+        StringBuilder src = new StringBuilder();
+        src.append("// Generated by RpcProcessor from ").append(ownerName).append(" - do not edit\n\n");
+        src.append("/**\n * Switch-based dispatcher for the @Rpc methods of ").append(ownerName).append("\n */\n");
+        src.append("public final class ").append(className).append(" implements RpcDispatcher {\n\n");
+        src.append("    private static final java.util.List<String> METHOD_NAMES = java.util.List.of(");
+        Set<String> listed = new HashSet<>();
+        for (ExecutableElement method : methods) {
+            String name = method.getSimpleName().toString();
+            if (listed.add(name)) {
+                src.append(listed.size() > 1 ? ", " : "").append('"').append(name).append('"');
+            }
+        }
+        src.append(");\n\n");
+        Map<String, List<ExecutableElement>> overloads = new LinkedHashMap<>();
+        for (ExecutableElement method : methods) {
+            overloads.computeIfAbsent(method.getSimpleName().toString(), k -> new ArrayList<>()).add(method);
+        }
+        for (Map.Entry<String, List<ExecutableElement>> overload : overloads.entrySet()) {
+            if (overload.getValue().size() < 2) {
+                continue;
+            }
+            src.append("    private static final ArgConverters.Signature[] ").append(overloadsField(overload.getKey()))
+               .append(" = {\n");
+            for (ExecutableElement method : overload.getValue()) {
+                src.append("        new ArgConverters.Signature(").append(method.isVarArgs());
+                for (VariableElement param : method.getParameters()) {
+                    src.append(", ").append(typeName(param.asType())).append(".class");
+                }
+                src.append("),\n");
+            }
+            src.append("    };\n\n");
+        }
+        src.append("    private final ").append(ownerName).append(" target;\n\n");
+        src.append("    public ").append(className).append("(").append(ownerName).append(" target) {\n");
+        src.append("        this.target = target;\n");
+        src.append("    }\n\n");
+        src.append("    @Override\n");
+        src.append("    public Object invoke(String methodName, Object[] args) throws Throwable {\n");
+        src.append("        switch (methodName) {\n");
+        
+        for (Map.Entry<String, List<ExecutableElement>> overload : overloads.entrySet()) {
+            String name = overload.getKey();
+            List<ExecutableElement> candidates = overload.getValue();
+            src.append("            case \"").append(name).append("\":\n");
+            if (candidates.size() == 1) {
+                ExecutableElement method = candidates.get(0);
+                int fixed = method.isVarArgs() ? method.getParameters().size() - 1 : method.getParameters().size();
+                String arityCheck = method.isVarArgs() ? "args.length >= " + fixed : "args.length == " + fixed;
+                src.append("                if (").append(arityCheck).append(") {\n");
+                appendCall(src, "                    ", method);
+                src.append("                }\n");
+            } else {
+                // Same scoring as DispatchTable, so both dispatchers pick the same overload
+                src.append("                switch (ArgConverters.resolve(ArgConverters.kindsOf(args), ")
+                   .append(overloadsField(name)).append(")) {\n");
+                for (int i = 0; i < candidates.size(); i++) {
+                    src.append("                    case ").append(i).append(":\n");
+                    appendCall(src, "                        ", candidates.get(i));
+                }
+                src.append("                    default:\n");
+                src.append("                        break;\n");
+                src.append("                }\n");
+            }
+            src.append("                break;\n");
+        }
+        src.append("            default:\n");
+        src.append("                break;\n");
+        src.append("        }\n");
+        src.append("        throw new NoSuchMethodException(\"Method '\" + methodName + \"' not found\");\n");
+        src.append("    }\n\n");
+        
+        src.append("    @Override\n");
+        src.append("    public Rpc.Kind kindOf(String methodName) {\n");
+        src.append("        switch (methodName) {\n");
+        Set<String> kindNames = new HashSet<>();
+        for (ExecutableElement method : methods) {
+            String name = method.getSimpleName().toString();
+            if (kindNames.add(name)) {
+                src.append("            case \"").append(name).append("\": return Rpc.Kind.").append(kindOf(method)).append(";\n");
+            }
+        }
+        src.append("            default: return null;\n");
+        src.append("        }\n");
+        src.append("    }\n\n");
+        
+        src.append("    @Override\n");
+        src.append("    public long cacheTtlOf(String methodName) {\n");
+        src.append("        switch (methodName) {\n");
+        Set<String> cachedNames = new HashSet<>();
+        for (ExecutableElement method : methods) {
+            String name = method.getSimpleName().toString();
+            long ttl = cacheTtlOf(method);
+            if (ttl != 0 && cachedNames.add(name)) {
+                src.append("            case \"").append(name).append("\": return ").append(ttl).append("L;\n");
+            }
+        }
+        src.append("            default: return 0L;\n");
+        src.append("        }\n");
+        src.append("    }\n\n");
+        
+        src.append("    @Override\n");
+        src.append("    public java.util.List<String> getMethodNames() {\n");
+        src.append("        return METHOD_NAMES;\n");
+        src.append("    }\n");
+        src.append("}\n");
+        
+        try (Writer writer = processingEnv.getFiler().createSourceFile(className, owner).openWriter()) {
+            writer.write(src.toString());
+        } catch (IOException e) {
+            error(owner, "Failed to generate " + className + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Emit the direct call of method with each argument run through its ArgConverters converter,
+     * returning null after a void method
+     */
+    private static void appendCall(StringBuilder src, String indent, ExecutableElement method) {
+        List<? extends VariableElement> params = method.getParameters();
+        int fixed = method.isVarArgs() ? params.size() - 1 : params.size();
+        boolean returnsVoid = method.getReturnType().getKind() == TypeKind.VOID;
+        src.append(indent).append(returnsVoid ? "target." : "return target.").append(method.getSimpleName()).append("(");
+        for (int i = 0; i < params.size(); i++) {
+            if (i > 0) src.append(", ");
+            boolean trailingVarargs = method.isVarArgs() && i == params.size() - 1;
+            String converter = converterFor(typeName(params.get(i).asType()), trailingVarargs);
+            if (trailingVarargs) {
+                src.append("ArgConverters.").append(converter)
+                   .append("(java.util.Arrays.copyOfRange(args, ").append(fixed).append(", args.length))");
+            } else {
+                src.append("ArgConverters.").append(converter).append("(args[").append(i).append("])");
+            }
+        }
+        src.append(");\n");
+        if (returnsVoid) {
+            src.append(indent).append("return null;\n");
+        }
+    }
+    
+    /**
+     * Name of the generated constant holding the signatures of a method's overloads
+     */
+    private static String overloadsField(String methodName) {
+        return methodName.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase() + "_OVERLOADS";
+    }
+    
+    /**
+     * Write rpc-schema.json next to the compiled classes
+     */
+    private void writeSchema() {
+        if (services.isEmpty()) {
+            return;
+        }
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"version\": 1,\n  \"services\": [\n");
+        int serviceIndex = 0;
+        for (Map.Entry<TypeElement, List<ExecutableElement>> service : services.entrySet()) {
+            if (serviceIndex++ > 0) json.append(",\n");
+            json.append("    {\n      \"name\": ").append(quote(service.getKey().getSimpleName().toString()));
+            json.append(",\n      \"methods\": [\n");
+            int methodIndex = 0;
+            for (ExecutableElement method : service.getValue()) {
+                if (methodIndex++ > 0) json.append(",\n");
+                json.append("        {\"name\": ").append(quote(method.getSimpleName().toString()));
+                json.append(", \"kind\": ").append(quote(kindOf(method).toLowerCase()));
+                json.append(", \"cacheTtlMs\": ").append(cacheTtlOf(method));
+                json.append(", \"returns\": ").append(quote(typeName(method.getReturnType())));
+                json.append(", \"varargs\": ").append(method.isVarArgs());
+                json.append(", \"params\": [");
+                List<? extends VariableElement> params = method.getParameters();
+                for (int i = 0; i < params.size(); i++) {
+                    if (i > 0) json.append(", ");
+                    json.append("{\"name\": ").append(quote(params.get(i).getSimpleName().toString()));
+                    json.append(", \"type\": ").append(quote(typeName(params.get(i).asType()))).append("}");
+                }
+                json.append("], \"doc\": ").append(quote(summaries.get(method))).append("}");
+            }
+            json.append("\n      ]\n    }");
+        }
+        json.append("\n  ]\n}\n");
+        
+        try (Writer writer = processingEnv.getFiler()
+                .createResource(StandardLocation.CLASS_OUTPUT, "", SCHEMA_FILE).openWriter()) {
+            writer.write(json.toString());
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Failed to write " + SCHEMA_FILE + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * First sentence of the method's doc comment, used as the schema description
+     */
+    private String summary(ExecutableElement method) {
+        String doc = processingEnv.getElementUtils().getDocComment(method);
+        if (doc == null) {
+            return "";
+        }
+        return doc.trim().split("\n")[0].trim();
+    }
+    
+    /**
+     * Name of the Rpc.Kind constant given in the method's @Rpc annotation
+     */
+    private static String kindOf(ExecutableElement method) {
+        for (AnnotationMirror annotation : method.getAnnotationMirrors()) {
+            if (!annotation.getAnnotationType().asElement().getSimpleName().contentEquals("Rpc")) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value
+                    : annotation.getElementValues().entrySet()) {
+                if (value.getKey().getSimpleName().contentEquals("kind")) {
+                    return ((VariableElement) value.getValue().getValue()).getSimpleName().toString();
+                }
+            }
+        }
+        return DEFAULT_KIND;
+    }
+    
+    /**
+     * The cacheTtlMs given in the method's @Rpc annotation, 0 when absent
+     */
+    private static long cacheTtlOf(ExecutableElement method) {
+        for (AnnotationMirror annotation : method.getAnnotationMirrors()) {
+            if (!annotation.getAnnotationType().asElement().getSimpleName().contentEquals("Rpc")) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value
+                    : annotation.getElementValues().entrySet()) {
+                if (value.getKey().getSimpleName().contentEquals("cacheTtlMs")) {
+                    return ((Number) value.getValue().getValue()).longValue();
+                }
+            }
+        }
+        return 0;
+    }
+    
+    private static String converterFor(String type, boolean trailingVarargs) {
+        if (trailingVarargs) {
+            return type.equals("String[]") ? "toStringArray" : null;
+        }
+        switch (type) {
+            case "int": return "toInt";
+            case "double": return "toDouble";
+            case "boolean": return "toBoolean";
+            case "String": return "toStringValue";
+            default: return null;
+        }
+    }
+    
+    private static String typeName(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return typeName(((javax.lang.model.type.ArrayType) type).getComponentType()) + "[]";
+        }
+        String name = type.toString();
+        return name.startsWith("java.lang.") ? name.substring("java.lang.".length()) : name;
+    }
+    
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '\n': quoted.append("\\n"); break;
+                case '\r': quoted.append("\\r"); break;
+                case '\t': quoted.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+    
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
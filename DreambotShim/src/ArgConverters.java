@@ -0,0 +1,286 @@
+import java.util.Comparator;
+
+/**
+ * Converts decoded JSON arguments into the parameter types exposed by DreamBotAPIWrapper.
+ * Numbers arrive as Integer or Double, strings and booleans as themselves.
+ */
+public final class ArgConverters {
+    
+    private ArgConverters() {
+    }
+    
+    /**
+     * Convert an argument to int, accepting whole-valued numbers and numeric strings
+     */
+    public static int toInt(Object arg) {
+        if (arg instanceof Integer) {
+            return (Integer) arg;
+        }
+        if (arg instanceof Number) {
+            double value = ((Number) arg).doubleValue();
+            if (value != Math.rint(value) || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Expected int but got " + arg);
+            }
+            return (int) value;
+        }
+        if (arg instanceof String) {
+            return Integer.parseInt(((String) arg).trim());
+        }
+        throw new IllegalArgumentException("Expected int but got " + describe(arg));
+    }
+    
+    /**
+     * Convert an argument to double, widening integers
+     */
+    public static double toDouble(Object arg) {
+        if (arg instanceof Number) {
+            return ((Number) arg).doubleValue();
+        }
+        if (arg instanceof String) {
+            return Double.parseDouble(((String) arg).trim());
+        }
+        throw new IllegalArgumentException("Expected double but got " + describe(arg));
+    }
+    
+    /**
+     * Convert an argument to boolean, accepting "true"/"false" strings
+     */
+    public static boolean toBoolean(Object arg) {
+        if (arg instanceof Boolean) {
+            return (Boolean) arg;
+        }
+        if (arg instanceof String) {
+            String value = ((String) arg).trim();
+            if (value.equalsIgnoreCase("true")) return true;
+            if (value.equalsIgnoreCase("false")) return false;
+        }
+        throw new IllegalArgumentException("Expected boolean but got " + describe(arg));
+    }
+    
+    /**
+     * Convert an argument to String
+     */
+    public static String toStringValue(Object arg) {
+        if (arg == null) {
+            throw new IllegalArgumentException("Expected string but got null");
+        }
+        return arg instanceof String ? (String) arg : arg.toString();
+    }
+    
+    /**
+     * Convert the collected trailing arguments of a varargs call to String[]
+     */
+    public static String[] toStringArray(Object arg) {
+        if (arg instanceof String[]) {
+            return (String[]) arg;
+        }
+        Object[] values = (Object[]) arg;
+        String[] strings = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            strings[i] = toStringValue(values[i]);
+        }
+        return strings;
+    }
+    
+    /**
+     * Unbox an argument already known to be an Integer
+     */
+    public static int unboxInt(Object arg) {
+        return (Integer) arg;
+    }
+    
+    /**
+     * Widen an argument already known to be a Number
+     */
+    public static double widenToDouble(Object arg) {
+        return ((Number) arg).doubleValue();
+    }
+    
+    /**
+     * Unbox an argument already known to be a Boolean
+     */
+    public static boolean unboxBoolean(Object arg) {
+        return (Boolean) arg;
+    }
+    
+    /**
+     * Cast an argument already known to be a String
+     */
+    public static String castString(Object arg) {
+        return (String) arg;
+    }
+    
+    /**
+     * Runtime type of a decoded argument, as far as overload resolution cares
+     */
+    enum ArgKind {
+        NULL, INT, LONG, DOUBLE, BOOLEAN, STRING, OTHER
+    }
+    
+    static ArgKind kindOf(Object arg) {
+        if (arg == null) return ArgKind.NULL;
+        if (arg instanceof Integer) return ArgKind.INT;
+        if (arg instanceof String) return ArgKind.STRING;
+        if (arg instanceof Double) return ArgKind.DOUBLE;
+        if (arg instanceof Boolean) return ArgKind.BOOLEAN;
+        if (arg instanceof Long) return ArgKind.LONG;
+        return arg instanceof Number ? ArgKind.DOUBLE : ArgKind.OTHER;
+    }
+    
+    /** Conversion cost returned when an argument of a kind can never fit a parameter type */
+    static final int NO_CONVERSION = -1;
+    
+    /**
+     * Cost of passing an argument of this kind to a parameter of this type: 0 for an exact
+     * match, 1 for widening an integer to double, higher for conversions that may fail
+     * (whole-valued double to int) or go through text, NO_CONVERSION if it never fits
+     */
+    static int conversionCost(Class<?> paramType, ArgKind kind) {
+        if (paramType == int.class) {
+            switch (kind) {
+                case INT: return 0;
+                case DOUBLE: return 4;
+                case STRING: return 6;
+                default: return NO_CONVERSION;
+            }
+        }
+        if (paramType == double.class) {
+            switch (kind) {
+                case DOUBLE: return 0;
+                case INT: case LONG: return 1;
+                case STRING: return 6;
+                default: return NO_CONVERSION;
+            }
+        }
+        if (paramType == boolean.class) {
+            switch (kind) {
+                case BOOLEAN: return 0;
+                case STRING: return 6;
+                default: return NO_CONVERSION;
+            }
+        }
+        if (paramType == String.class) {
+            switch (kind) {
+                case STRING: return 0;
+                case NULL: return NO_CONVERSION;
+                default: return 5;
+            }
+        }
+        return NO_CONVERSION;
+    }
+    
+    /**
+     * Name of the converter that needs no checks for an argument of this kind, or null if
+     * the general converter for the parameter type must be used
+     */
+    static String exactConverter(Class<?> paramType, ArgKind kind) {
+        if (paramType == int.class && kind == ArgKind.INT) return "unboxInt";
+        if (paramType == double.class && (kind == ArgKind.INT || kind == ArgKind.LONG || kind == ArgKind.DOUBLE)) return "widenToDouble";
+        if (paramType == boolean.class && kind == ArgKind.BOOLEAN) return "unboxBoolean";
+        if (paramType == String.class && kind == ArgKind.STRING) return "castString";
+        return null;
+    }
+    
+    static ArgKind[] kindsOf(Object[] args) {
+        ArgKind[] kinds = new ArgKind[args.length];
+        for (int i = 0; i < args.length; i++) {
+            kinds[i] = kindOf(args[i]);
+        }
+        return kinds;
+    }
+    
+    /**
+     * Index of the overload to call with arguments of these kinds: the cheapest conversion
+     * among the candidates taking this many arguments, or the first of them in Signature
+     * order when none fits so its converters report the mismatch, or -1 when none takes
+     * this many. Shared by DispatchTable and the dispatchers RpcProcessor generates.
+     */
+    static int resolve(ArgKind[] argKinds, Signature... candidates) {
+        int best = -1;
+        int bestCost = Integer.MAX_VALUE;
+        int fallback = -1;
+        for (int i = 0; i < candidates.length; i++) {
+            Signature candidate = candidates[i];
+            if (!candidate.accepts(argKinds.length)) {
+                continue;
+            }
+            if (fallback < 0 || Signature.ORDER.compare(candidate, candidates[fallback]) < 0) {
+                fallback = i;
+            }
+            int cost = candidate.conversionCost(argKinds);
+            if (cost == NO_CONVERSION) {
+                continue;
+            }
+            if (cost < bestCost || (cost == bestCost && Signature.ORDER.compare(candidate, candidates[best]) < 0)) {
+                best = i;
+                bestCost = cost;
+            }
+        }
+        return best >= 0 ? best : fallback;
+    }
+    
+    /**
+     * Parameter types of one overload as overload resolution sees them. Ordered fixed
+     * arity first, then fewest String parameters, then by parameter types, which decides
+     * ties between equally cheap candidates.
+     */
+    static final class Signature {
+        static final Comparator<Signature> ORDER = Comparator
+                .comparing((Signature s) -> s.varargs)
+                .thenComparingInt(s -> s.stringParameterCount)
+                .thenComparing(s -> s.description);
+        
+        private final Class<?>[] paramTypes;
+        private final boolean varargs;
+        private final int stringParameterCount;
+        private final String description;
+        
+        Signature(boolean varargs, Class<?>... paramTypes) {
+            this.paramTypes = paramTypes;
+            this.varargs = varargs;
+            int strings = 0;
+            StringBuilder description = new StringBuilder();
+            for (Class<?> type : paramTypes) {
+                if (type == String.class || type == String[].class) strings++;
+                if (description.length() > 0) description.append(", ");
+                description.append(type.getSimpleName());
+            }
+            this.stringParameterCount = strings;
+            this.description = description.toString();
+        }
+        
+        boolean isVarargs() {
+            return varargs;
+        }
+        
+        int fixedParameterCount() {
+            return varargs ? paramTypes.length - 1 : paramTypes.length;
+        }
+        
+        boolean accepts(int argCount) {
+            return varargs ? argCount >= fixedParameterCount() : argCount == paramTypes.length;
+        }
+        
+        /**
+         * Summed cost of converting arguments of these kinds, plus one for varargs, or
+         * NO_CONVERSION if any argument cannot fit
+         */
+        int conversionCost(ArgKind[] argKinds) {
+            int fixed = fixedParameterCount();
+            int cost = varargs ? 1 : 0;
+            for (int i = 0; i < argKinds.length; i++) {
+                Class<?> type = i < fixed ? paramTypes[i] : String.class;
+                int argCost = ArgConverters.conversionCost(type, argKinds[i]);
+                if (argCost == NO_CONVERSION) {
+                    return NO_CONVERSION;
+                }
+                cost += argCost;
+            }
+            return cost;
+        }
+    }
+    
+    private static String describe(Object arg) {
+        return arg == null ? "null" : arg.getClass().getSimpleName() + " " + arg;
+    }
+}
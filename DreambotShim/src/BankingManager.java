@@ -1,5 +1,4 @@
 import org.dreambot.api.utilities.Logger;
-import org.dreambot.api.utilities.Sleep;
 import org.dreambot.api.methods.container.impl.bank.Bank;
 import org.dreambot.api.methods.interactive.GameObjects;
 
@@ -54,7 +53,7 @@ public class BankingManager {
                 if (bank.interact("Bank")) {
                     Logger.log("Python->Java: Bank interaction initiated, waiting for bank to open...");
                     // Wait for bank to open with timeout
-                    boolean opened = Sleep.sleepUntil(() -> Bank.isOpen(), 5000);
+                    boolean opened = RequestContext.sleepUntil(() -> Bank.isOpen(), 5000);
                     
                     if (opened && Bank.isOpen()) {
                         Logger.log("Python->Java: Bank opened successfully");
@@ -99,7 +98,7 @@ public class BankingManager {
             if (Bank.close()) {
                 Logger.log("Python->Java: Bank close initiated, waiting for confirmation...");
                 // Wait for bank to close with timeout
-                boolean closed = Sleep.sleepUntil(() -> !Bank.isOpen(), 3000);
+                boolean closed = RequestContext.sleepUntil(() -> !Bank.isOpen(), 3000);
                 if (closed) {
                     Logger.log("Python->Java: Bank closed successfully");
                     return "Bank closed - SUCCESS";
@@ -138,7 +137,7 @@ public class BankingManager {
             if (Bank.depositAllExcept(itemsToKeep)) {
                 Logger.log("Python->Java: Deposit command sent, waiting for completion...");
                 // Wait for deposit to complete - check that only items to keep remain
-                boolean deposited = Sleep.sleepUntil(() -> {
+                boolean deposited = RequestContext.sleepUntil(() -> {
                     int expectedCount = 0;
                     for (String item : itemsToKeep) {
                         if (org.dreambot.api.methods.container.impl.Inventory.contains(item)) {
@@ -194,7 +193,7 @@ public class BankingManager {
             if (Bank.deposit(itemName, amountToDeposit)) {
                 Logger.log("Python->Java: Deposit command sent, waiting for completion...");
                 // Wait for deposit to complete
-                boolean deposited = Sleep.sleepUntil(() -> {
+                boolean deposited = RequestContext.sleepUntil(() -> {
                     int currentCount = org.dreambot.api.methods.container.impl.Inventory.count(itemName);
                     int expectedCount = initialCount - amountToDeposit;
                     Logger.log("Python->Java: Current count: " + currentCount + ", expected: " + expectedCount);
@@ -244,7 +243,7 @@ public class BankingManager {
             if (Bank.withdraw(itemName, count)) {
                 Logger.log("Python->Java: Withdraw command sent, waiting for completion...");
                 // Wait for withdrawal to complete
-                boolean withdrawn = Sleep.sleepUntil(() -> {
+                boolean withdrawn = RequestContext.sleepUntil(() -> {
                     int currentCount = org.dreambot.api.methods.container.impl.Inventory.count(itemName);
                     Logger.log("Python->Java: Current inventory count: " + currentCount + ", initial: " + initialCount);
                     return currentCount > initialCount;
@@ -0,0 +1,317 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary framing, used on a connection once the client negotiates it with the
+ * "hello" handshake; JSON lines stay the default. All integers are big-endian.
+ * <pre>
+ * frame    = int32 length of the rest, u8 frame type, body
+ * CALL     (1) = int32 id, u16 method ordinal, int32 timeoutMs (0 = none), u8 flags, u8 arg count, value*
+ * RESPONSE (2) = int32 id, u8 status, value (the result if ok, the error string otherwise)
+ * EVENT    (3) = value (the event as a JSON string)
+ * PROGRESS (4) = int32 id, u8 count, (value name, value)*, sent before the call's RESPONSE
+ * HEARTBEAT (5) = empty, sent both ways on an idle connection that offered "heartbeat" in hello
+ * value    = u8 tag, then NULL (0) | INT (1) int32 | LONG (2) int64 | DOUBLE (3) float64
+ *            | BOOLEAN (4) u8 | STRING (5) int32 byte length + UTF-8
+ * status   = OK (0) | ERROR (1) | TIMEOUT (2) | BUSY (3)
+ * flags    = bit 0: send PROGRESS frames
+ * </pre>
+ * Method ordinals index the method table sent in the hello reply. Batches and
+ * idempotency keys are JSON only.
+ */
+public final class BinaryCodec {
+    
+    public static final String FORMAT_NAME = "binary";
+    public static final int VERSION = 3;
+    public static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+    
+    public static final byte FRAME_CALL = 1;
+    public static final byte FRAME_RESPONSE = 2;
+    public static final byte FRAME_EVENT = 3;
+    public static final byte FRAME_PROGRESS = 4;
+    public static final byte FRAME_HEARTBEAT = 5;
+    
+    public static final int FLAG_PROGRESS = 1;
+    
+    public static final byte TAG_NULL = 0;
+    public static final byte TAG_INT = 1;
+    public static final byte TAG_LONG = 2;
+    public static final byte TAG_DOUBLE = 3;
+    public static final byte TAG_BOOLEAN = 4;
+    public static final byte TAG_STRING = 5;
+    
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERROR = 1;
+    public static final byte STATUS_TIMEOUT = 2;
+    public static final byte STATUS_BUSY = 3;
+    
+    private BinaryCodec() {
+    }
+    
+    /**
+     * Decode a CALL frame body (everything after the length prefix)
+     */
+    public static RpcRequest decodeCall(ByteBuffer frame, List<String> methodTable) throws IOException {
+        try {
+            byte type = frame.get();
+            if (type != FRAME_CALL) {
+                throw new IOException("Expected a call frame but got type " + type);
+            }
+            int id = frame.getInt();
+            int ordinal = Short.toUnsignedInt(frame.getShort());
+            if (ordinal >= methodTable.size()) {
+                throw new IOException("Unknown method ordinal " + ordinal);
+            }
+            int timeoutMs = frame.getInt();
+            int flags = Byte.toUnsignedInt(frame.get());
+            Object[] args = new Object[Byte.toUnsignedInt(frame.get())];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = readValue(frame);
+            }
+            return new RpcRequest(String.valueOf(id), methodTable.get(ordinal), args, null, timeoutMs, null,
+                    (flags & FLAG_PROGRESS) != 0);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated call frame", e);
+        }
+    }
+    
+    /**
+     * Encode a complete CALL frame without flags, length prefix included
+     */
+    public static byte[] encodeCall(int id, int ordinal, int timeoutMs, Object... args) throws IOException {
+        return encodeCall(id, ordinal, timeoutMs, 0, args);
+    }
+    
+    /**
+     * Encode a complete CALL frame, length prefix included
+     */
+    public static byte[] encodeCall(int id, int ordinal, int timeoutMs, int flags, Object... args) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeByte(FRAME_CALL);
+        out.writeInt(id);
+        out.writeShort(ordinal);
+        out.writeInt(timeoutMs);
+        out.writeByte(flags);
+        out.writeByte(args.length);
+        for (Object arg : args) {
+            writeValue(out, arg);
+        }
+        return withLength(bytes.toByteArray());
+    }
+    
+    /**
+     * Encode a complete RESPONSE frame; ids that are not numeric become -1
+     */
+    public static byte[] encodeResponse(RpcResponse response) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeByte(FRAME_RESPONSE);
+            out.writeInt(parseId(response.getId()));
+            byte status = statusCode(response.getStatus());
+            out.writeByte(status);
+            writeValue(out, status == STATUS_OK ? response.getResult() : response.getError());
+            return withLength(bytes.toByteArray());
+        } catch (IOException e) {
+            // ByteArrayOutputStream never throws
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Decode a RESPONSE frame body into a response whose result or error is typed
+     */
+    public static RpcResponse decodeResponse(ByteBuffer frame) throws IOException {
+        try {
+            byte type = frame.get();
+            if (type != FRAME_RESPONSE) {
+                throw new IOException("Expected a response frame but got type " + type);
+            }
+            String id = String.valueOf(frame.getInt());
+            byte status = frame.get();
+            Object value = readValue(frame);
+            switch (status) {
+                case STATUS_OK:
+                    return RpcResponse.ok(id, null, value);
+                case STATUS_TIMEOUT:
+                    return RpcResponse.failure(id, null, RpcResponse.STATUS_TIMEOUT, String.valueOf(value));
+                case STATUS_BUSY:
+                    return RpcResponse.failure(id, null, RpcResponse.STATUS_BUSY, String.valueOf(value));
+                default:
+                    return RpcResponse.error(id, null, String.valueOf(value));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated response frame", e);
+        }
+    }
+    
+    /**
+     * Encode a complete PROGRESS frame for a call
+     */
+    public static byte[] encodeProgress(String id, Map<String, Object> values) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeByte(FRAME_PROGRESS);
+            out.writeInt(parseId(id));
+            out.writeByte(values.size());
+            for (Map.Entry<String, Object> value : values.entrySet()) {
+                writeValue(out, value.getKey());
+                writeValue(out, value.getValue());
+            }
+            return withLength(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Decode a PROGRESS frame body into a progress response
+     */
+    public static RpcResponse decodeProgress(ByteBuffer frame) throws IOException {
+        try {
+            byte type = frame.get();
+            if (type != FRAME_PROGRESS) {
+                throw new IOException("Expected a progress frame but got type " + type);
+            }
+            String id = String.valueOf(frame.getInt());
+            int count = Byte.toUnsignedInt(frame.get());
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                values.put(String.valueOf(readValue(frame)), readValue(frame));
+            }
+            return RpcResponse.progress(id, null, values);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated progress frame", e);
+        }
+    }
+    
+    /**
+     * Wrap a JSON event line in an EVENT frame
+     */
+    public static byte[] encodeEvent(String json) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length() + 16);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeByte(FRAME_EVENT);
+            writeValue(out, json);
+            return withLength(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * A HEARTBEAT frame, length prefix included
+     */
+    public static byte[] encodeHeartbeat() {
+        return new byte[]{0, 0, 0, 1, FRAME_HEARTBEAT};
+    }
+    
+    /**
+     * Frame type of a frame body, without consuming it
+     */
+    public static byte frameType(ByteBuffer frame) {
+        return frame.get(frame.position());
+    }
+    
+    /**
+     * Request id from the header of a CALL frame body without consuming it, or null if the
+     * frame is not a call or too short to carry one, so a call whose body fails to decode
+     * can still be answered under its own id
+     */
+    public static String callId(ByteBuffer frame) {
+        int start = frame.position();
+        if (frame.remaining() < 5 || frame.get(start) != FRAME_CALL) {
+            return null;
+        }
+        return String.valueOf(frame.getInt(start + 1));
+    }
+    
+    static Object readValue(ByteBuffer in) throws IOException {
+        byte tag = in.get();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_INT:
+                return in.getInt();
+            case TAG_LONG:
+                return in.getLong();
+            case TAG_DOUBLE:
+                return in.getDouble();
+            case TAG_BOOLEAN:
+                return in.get() != 0;
+            case TAG_STRING:
+                int length = in.getInt();
+                if (length < 0 || length > in.remaining()) {
+                    throw new IOException("Bad string length " + length);
+                }
+                String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+                in.position(in.position() + length);
+                return value;
+            default:
+                throw new IOException("Unknown value tag " + tag);
+        }
+    }
+    
+    static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(TAG_INT);
+            out.writeInt(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            out.writeByte(TAG_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Number) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeByte((Boolean) value ? 1 : 0);
+        } else {
+            byte[] utf8 = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+            out.writeByte(TAG_STRING);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+    }
+    
+    private static byte[] withLength(byte[] frame) {
+        ByteBuffer.wrap(frame).putInt(0, frame.length - 4);
+        return frame;
+    }
+    
+    private static int parseId(String id) {
+        try {
+            return id != null ? Integer.parseInt(id) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    private static byte statusCode(String status) {
+        switch (status) {
+            case RpcResponse.STATUS_OK:
+                return STATUS_OK;
+            case RpcResponse.STATUS_TIMEOUT:
+                return STATUS_TIMEOUT;
+            case RpcResponse.STATUS_BUSY:
+                return STATUS_BUSY;
+            default:
+                return STATUS_ERROR;
+        }
+    }
+}
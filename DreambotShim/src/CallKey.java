@@ -0,0 +1,44 @@
+import java.util.Arrays;
+
+/**
+ * A method name plus its decoded arguments, compared by value
+ */
+final class CallKey {
+    
+    private final String method;
+    private final Object[] args;
+    private final long epoch;
+    private final int hash;
+    
+    CallKey(String method, Object[] args) {
+        this(method, args, 0);
+    }
+    
+    /**
+     * A key that only matches calls made in the same epoch, such as a cache generation
+     */
+    CallKey(String method, Object[] args, long epoch) {
+        this.method = method;
+        this.args = args;
+        this.epoch = epoch;
+        this.hash = 31 * (31 * method.hashCode() + Arrays.deepHashCode(args)) + Long.hashCode(epoch);
+    }
+    
+    String getMethod() {
+        return method;
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof CallKey)) {
+            return false;
+        }
+        CallKey key = (CallKey) other;
+        return epoch == key.epoch && method.equals(key.method) && Arrays.deepEquals(args, key.args);
+    }
+    
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
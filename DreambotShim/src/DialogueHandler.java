@@ -1,11 +1,12 @@
 import org.dreambot.api.utilities.Logger;
-import org.dreambot.api.utilities.Sleep;
 import org.dreambot.api.methods.interactive.NPCs;
 import org.dreambot.api.methods.interactive.Players;
 import org.dreambot.api.wrappers.interactive.NPC;
 import org.dreambot.api.methods.dialogues.Dialogues;
 import org.dreambot.api.methods.walking.impl.Walking;
 import org.dreambot.api.methods.map.Tile;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.HashSet;
 import java.util.Set;
@@ -15,6 +16,7 @@ import java.util.Set;
  */
 public class DialogueHandler {
     
+    private static final Gson gson = new Gson();
     private final TaskManager taskManager;
     private final AtomicBoolean skipRequested;
     
@@ -65,16 +67,25 @@ public class DialogueHandler {
                     if (distance > 1) {
                         Logger.log("Python->Java: Walking to NPC location...");
                         taskManager.setCurrentStep("Walking to NPC " + npcName);
+                        Job.reportProgress("stage", "walking to NPC");
                         
                         if (Walking.walk(npcTile)) {
                             Logger.log("Python->Java: Walking command sent, waiting to get closer...");
                             
                             // Wait for walking to complete or get within 1 tile
-                            boolean reachedNPC = Sleep.sleepUntil(() -> {
+                            boolean reachedNPC = RequestContext.sleepUntil(() -> {
                                 if (Players.getLocal() == null) return true; // Safety check
+                                if (skipRequested.get()) return true;
                                 return Players.getLocal().getTile().distance(npcTile) <= 1;
                             }, 10000); // 10 second timeout for walking
                             
+                            // The wait only stops early on a skip; consume it here so we never go on to Talk-to
+                            if (skipRequested.getAndSet(false) || RequestContext.shouldAbort()) {
+                                Logger.log("Python->Java: Skip requested while walking to NPC");
+                                taskManager.setCurrentStep("Idle - Waiting for commands");
+                                return createSuccessResponse("Dialogue handling skipped", 0, System.currentTimeMillis() - startTime);
+                            }
+                            
                             if (reachedNPC) {
                                 Logger.log("Python->Java: Successfully moved within range of NPC");
                             } else {
@@ -91,12 +102,13 @@ public class DialogueHandler {
                     // Now attempt to interact with the NPC
                     Logger.log("Python->Java: Attempting to interact with NPC...");
                     taskManager.setCurrentStep("Talking to NPC " + npcName);
+                    Job.reportProgress("stage", "talking to NPC");
                     
                     if (npc.interact("Talk-to")) {
                         Logger.log("Python->Java: Successfully interacted with NPC, waiting for dialogue...");
                         npcInteractionAttempted = true;
                         // Wait a moment for dialogue to appear after interaction
-                        Sleep.sleep(500, 800);
+                        RequestContext.sleep(500, 800);
                     } else {
                         Logger.log("Python->Java: Failed to interact with NPC " + npcName);
                         return createErrorResponse("Failed to interact with NPC: " + npcName);
@@ -114,16 +126,17 @@ public class DialogueHandler {
             
             while (System.currentTimeMillis() - startTime < maxWaitMillis) {
                 try {
-                    // Check for skip request
-                    if (skipRequested.get()) {
+                    // Check for skip request or job cancellation
+                    boolean skipped = skipRequested.getAndSet(false);
+                    if (skipped || RequestContext.shouldAbort()) {
                         Logger.log("Python->Java: Skip requested during dialogue handling");
-                        skipRequested.set(false);
                         taskManager.setCurrentStep("Idle - Waiting for commands");
                         return createSuccessResponse("Dialogue handling skipped", interactionCount, System.currentTimeMillis() - startTime);
                     }
 
                     if (Dialogues.inDialogue()) {
                         interactionCount++;
+                        Job.reportProgress("interactionCount", interactionCount);
                         Logger.log("Python->Java: Dialogue detected, interaction #" + interactionCount);
                         
                         // Track dialogue state for loop detection
@@ -149,13 +162,14 @@ public class DialogueHandler {
                             
                             // Add this new dialogue state to our seen states
                             seenDialogueStates.add(currentDialogueState);
+                            Job.reportProgress("dialogueStatesSeen", seenDialogueStates.size());
                         }
                         
                         // Handle the dialogue based on Tutorial Island pattern
                         if (Dialogues.canContinue()) {
                             Logger.log("Python->Java: Continuing dialogue...");
                             if (Dialogues.continueDialogue()) {
-                                Sleep.sleep(600, 1000); // Sleep similar to Tutorial Island handler
+                                RequestContext.sleep(600, 1000); // Sleep similar to Tutorial Island handler
                                 continue;
                             } else {
                                 Logger.log("Python->Java: Failed to continue dialogue");
@@ -166,15 +180,16 @@ public class DialogueHandler {
                             if (options != null && options.length > 0) {
                                 // Always select the first available option to keep dialogue flowing
                                 String selectedOption = options[0];
+                                Job.reportProgress("lastOption", selectedOption);
                                 Logger.log("Python->Java: Selecting option: " + selectedOption + " (interaction " + interactionCount + ")");
                                 
                                 if (Dialogues.chooseOption(selectedOption)) {
-                                    Sleep.sleep(600, 1000);
+                                    RequestContext.sleep(600, 1000);
                                     continue;
                                 } else {
                                     Logger.log("Python->Java: Failed to select option, trying by index");
                                     if (Dialogues.chooseOption(1)) {
-                                        Sleep.sleep(600, 1000);
+                                        RequestContext.sleep(600, 1000);
                                         continue;
                                     }
                                 }
@@ -186,7 +201,7 @@ public class DialogueHandler {
                             String npcDialogue = Dialogues.getNPCDialogue();
                             if (npcDialogue != null && !npcDialogue.trim().isEmpty()) {
                                 Logger.log("Python->Java: In dialogue but no actions available. NPC text: " + npcDialogue);
-                                Sleep.sleep(500, 800);
+                                RequestContext.sleep(500, 800);
                             } else {
                                 Logger.log("Python->Java: Empty dialogue detected - treating as complete");
                                 // Empty dialogues are part of the game and should be treated as complete
@@ -220,11 +235,11 @@ public class DialogueHandler {
                         }
                         
                         // Continue waiting for dialogue to appear
-                        Sleep.sleep(300, 500);
+                        RequestContext.sleep(300, 500);
                     }
                 } catch (Exception e) {
                     Logger.log("Python->Java: Error during dialogue handling: " + e.getMessage());
-                    Sleep.sleep(500, 700);
+                    RequestContext.sleep(500, 700);
                 }
             }
 
@@ -278,18 +293,18 @@ public class DialogueHandler {
     }
     
     private String createSuccessResponse(String message, int interactionCount, long totalWaitTime) {
-        return "{"
-            + "\"success\": true, "
-            + "\"message\": \"" + message + "\", "
-            + "\"interactionCount\": " + interactionCount + ", "
-            + "\"totalWaitTime\": " + totalWaitTime
-            + "}";
+        JsonObject response = new JsonObject();
+        response.addProperty("success", true);
+        response.addProperty("message", message);
+        response.addProperty("interactionCount", interactionCount);
+        response.addProperty("totalWaitTime", totalWaitTime);
+        return gson.toJson(response);
     }
 
     private String createErrorResponse(String error) {
-        return "{"
-            + "\"success\": false, "
-            + "\"error\": \"" + error + "\""
-            + "}";
+        JsonObject response = new JsonObject();
+        response.addProperty("success", false);
+        response.addProperty("error", error);
+        return gson.toJson(response);
     }
 }
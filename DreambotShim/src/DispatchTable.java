@@ -0,0 +1,348 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * Immutable table of pre-bound MethodHandles for the public methods of an RPC target.
+ * Built once at startup. Overloads are scored once per name and argument-kind signature
+ * (e.g. calculate called with int, int, String) and the winner is cached with a handle
+ * whose converters are specialised for those kinds, so a call is two hash lookups
+ * followed by invokeExact. Used when the dispatcher generated by RpcProcessor is not on
+ * the classpath.
+ */
+public class DispatchTable implements RpcDispatcher {
+    
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+    /** Argument count bits at the bottom of a signature, then 3 bits per argument kind */
+    private static final int SIGNATURE_COUNT_BITS = 5;
+    private static final int SIGNATURE_KIND_BITS = 3;
+    private static final int MAX_SIGNATURE_ARGS = (Long.SIZE - SIGNATURE_COUNT_BITS) / SIGNATURE_KIND_BITS;
+    private static final long UNCACHEABLE = -1;
+    /** Bound on cached signatures per name, so odd varargs traffic cannot grow the cache */
+    private static final int MAX_PLANS_PER_METHOD = 64;
+    /** Cached answer for a signature no candidate can take */
+    private static final Plan NO_MATCH = new Plan(null, null);
+    
+    /** Candidates keyed by "name/arity", most specific signature first */
+    private final Map<String, List<Entry>> fixedArity;
+    /** Varargs methods keyed by name, matched when no fixed-arity entry exists */
+    private final Map<String, List<Entry>> varargs;
+    /** Scheduling kind by method name, from @Rpc or ACTION when unannotated */
+    private final Map<String, Rpc.Kind> kinds;
+    /** Result cache TTLs by method name, only for methods that declare one */
+    private final Map<String, Long> cacheTtls;
+    /** Resolved overload per method name and argument-kind signature, filled on first call */
+    private final Map<String, Map<Long, Plan>> plans;
+    
+    private DispatchTable(Map<String, List<Entry>> fixedArity, Map<String, List<Entry>> varargs,
+                          Map<String, Rpc.Kind> kinds, Map<String, Long> cacheTtls) {
+        this.fixedArity = fixedArity;
+        this.varargs = varargs;
+        this.kinds = kinds;
+        this.cacheTtls = cacheTtls;
+        Map<String, Map<Long, Plan>> plans = new HashMap<>();
+        for (String name : kinds.keySet()) {
+            plans.put(name, new ConcurrentHashMap<>());
+        }
+        this.plans = Collections.unmodifiableMap(plans);
+    }
+    
+    /**
+     * Build the table for every public instance method declared on type, bound to target
+     */
+    public static <T> DispatchTable build(Class<T> type, T target) {
+        return buildTable(type, method -> LOOKUP.unreflect(method).bindTo(target));
+    }
+    
+    /**
+     * Build a table with the methods, argument conversion and kinds of type whose calls
+     * go to responder with the converted arguments instead, so traffic can be replayed
+     * without a game client
+     */
+    public static DispatchTable stub(Class<?> type, BiFunction<String, Object[], Object> responder) {
+        MethodHandle apply;
+        try {
+            apply = LOOKUP.findVirtual(BiFunction.class, "apply",
+                    MethodType.methodType(Object.class, Object.class, Object.class)).bindTo(responder);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        return buildTable(type, method -> MethodHandles.insertArguments(apply, 0, method.getName())
+                .asType(MethodType.methodType(Object.class, Object[].class))
+                .asCollector(Object[].class, method.getParameterCount())
+                .asType(MethodType.methodType(Object.class, method.getParameterTypes())));
+    }
+    
+    /**
+     * Produces the handle a method's calls go to, taking the method's parameter types
+     */
+    private interface Binder {
+        MethodHandle bind(Method method) throws IllegalAccessException;
+    }
+    
+    private static DispatchTable buildTable(Class<?> type, Binder binder) {
+        Map<String, List<Entry>> fixedArity = new HashMap<>();
+        Map<String, List<Entry>> varargs = new HashMap<>();
+        Map<String, Rpc.Kind> kinds = new HashMap<>();
+        Map<String, Long> cacheTtls = new HashMap<>();
+        
+        for (Method method : type.getDeclaredMethods()) {
+            int modifiers = method.getModifiers();
+            if (!Modifier.isPublic(modifiers) || Modifier.isStatic(modifiers) || method.isSynthetic()) {
+                continue;
+            }
+            try {
+                Entry entry = new Entry(method, binder.bind(method));
+                String key = entry.isVarargs() ? method.getName() : key(method.getName(), method.getParameterCount());
+                (entry.isVarargs() ? varargs : fixedArity).computeIfAbsent(key, k -> new ArrayList<>()).add(entry);
+                Rpc rpc = method.getAnnotation(Rpc.class);
+                kinds.putIfAbsent(method.getName(), rpc != null ? rpc.kind() : Rpc.Kind.ACTION);
+                if (rpc != null && rpc.cacheTtlMs() != 0) {
+                    cacheTtls.putIfAbsent(method.getName(), rpc.cacheTtlMs());
+                }
+            } catch (IllegalAccessException | IllegalArgumentException e) {
+                System.err.println("Skipping method " + method.getName() + ": " + e.getMessage());
+            }
+        }
+        
+        freeze(fixedArity);
+        freeze(varargs);
+        return new DispatchTable(Collections.unmodifiableMap(fixedArity), Collections.unmodifiableMap(varargs),
+                Collections.unmodifiableMap(kinds), Collections.unmodifiableMap(cacheTtls));
+    }
+    
+    @Override
+    public Object invoke(String methodName, Object[] args) throws Throwable {
+        Plan plan = planFor(methodName, args);
+        if (plan == NO_MATCH) {
+            throw new NoSuchMethodException("Method '" + methodName + "' not found");
+        }
+        return (Object) plan.invoker.invokeExact(plan.entry.prepareArguments(args));
+    }
+    
+    @Override
+    public Rpc.Kind kindOf(String methodName) {
+        return kinds.get(methodName);
+    }
+    
+    @Override
+    public long cacheTtlOf(String methodName) {
+        return cacheTtls.getOrDefault(methodName, 0L);
+    }
+    
+    @Override
+    public List<String> getMethodNames() {
+        List<String> names = new ArrayList<>(kinds.keySet());
+        Collections.sort(names);
+        return names;
+    }
+    
+    /**
+     * Check whether any method with this name is exposed
+     */
+    public boolean hasMethod(String methodName) {
+        if (varargs.containsKey(methodName)) {
+            return true;
+        }
+        String prefix = methodName + "/";
+        for (String key : fixedArity.keySet()) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * The cached plan for this call's argument-kind signature, resolving it on first use
+     */
+    Plan planFor(String methodName, Object[] args) {
+        Map<Long, Plan> cache = plans.get(methodName);
+        if (cache == null) {
+            return NO_MATCH;
+        }
+        long signature = signatureOf(args);
+        if (signature == UNCACHEABLE) {
+            return resolve(methodName, args);
+        }
+        Plan plan = cache.get(signature);
+        if (plan == null) {
+            plan = resolve(methodName, args);
+            if (cache.size() < MAX_PLANS_PER_METHOD) {
+                cache.putIfAbsent(signature, plan);
+            }
+        }
+        return plan;
+    }
+    
+    /**
+     * Pick the overload ArgConverters.resolve scores cheapest for this call's argument
+     * kinds, specialising its converters; if none fits, the candidate it falls back to
+     * keeps the general converters so they report the mismatch.
+     */
+    private Plan resolve(String methodName, Object[] args) {
+        ArgConverters.ArgKind[] argKinds = ArgConverters.kindsOf(args);
+        List<Entry> candidates = new ArrayList<>(fixedArity.getOrDefault(key(methodName, args.length), Collections.emptyList()));
+        candidates.addAll(varargs.getOrDefault(methodName, Collections.emptyList()));
+        ArgConverters.Signature[] signatures = new ArgConverters.Signature[candidates.size()];
+        for (int i = 0; i < signatures.length; i++) {
+            signatures[i] = candidates.get(i).signature;
+        }
+        int choice = ArgConverters.resolve(argKinds, signatures);
+        if (choice < 0) {
+            return NO_MATCH;
+        }
+        Entry chosen = candidates.get(choice);
+        if (chosen.signature.conversionCost(argKinds) == ArgConverters.NO_CONVERSION) {
+            return new Plan(chosen, chosen.invoker);
+        }
+        try {
+            return new Plan(chosen, createInvoker(chosen.method, chosen.target, chosen.convertersFor(argKinds)));
+        } catch (IllegalAccessException e) {
+            return new Plan(chosen, chosen.invoker);
+        }
+    }
+    
+    /**
+     * Pack the argument count and each argument's kind into a long, or UNCACHEABLE when
+     * there are too many arguments to fit
+     */
+    private static long signatureOf(Object[] args) {
+        if (args.length > MAX_SIGNATURE_ARGS) {
+            return UNCACHEABLE;
+        }
+        long signature = args.length;
+        for (int i = 0; i < args.length; i++) {
+            signature |= (long) ArgConverters.kindOf(args[i]).ordinal() << (SIGNATURE_COUNT_BITS + SIGNATURE_KIND_BITS * i);
+        }
+        return signature;
+    }
+    
+    private static String key(String methodName, int arity) {
+        return methodName + "/" + arity;
+    }
+    
+    private static void freeze(Map<String, List<Entry>> map) {
+        for (Map.Entry<String, List<Entry>> e : map.entrySet()) {
+            List<Entry> entries = e.getValue();
+            entries.sort(Comparator.comparing((Entry entry) -> entry.signature, ArgConverters.Signature.ORDER));
+            e.setValue(Collections.unmodifiableList(entries));
+        }
+    }
+    
+    /**
+     * Attach argument converters to the method's bound handle and spread it to (Object[])Object
+     */
+    private static MethodHandle createInvoker(Method method, MethodHandle bound, MethodHandle[] converters) {
+        MethodHandle handle = bound;
+        if (method.isVarArgs()) {
+            // Keep the trailing array parameter as a single positional argument
+            handle = handle.asFixedArity();
+        }
+        Class<?>[] paramTypes = method.getParameterTypes();
+        handle = MethodHandles.filterArguments(handle, 0, converters);
+        handle = handle.asType(handle.type().changeReturnType(Object.class));
+        return handle.asSpreader(Object[].class, paramTypes.length).asType(INVOKER_TYPE);
+    }
+    
+    private static MethodHandle converterFor(Class<?> paramType) throws IllegalAccessException {
+        String name;
+        if (paramType == int.class) name = "toInt";
+        else if (paramType == double.class) name = "toDouble";
+        else if (paramType == boolean.class) name = "toBoolean";
+        else if (paramType == String.class) name = "toStringValue";
+        else if (paramType == String[].class) name = "toStringArray";
+        else throw new IllegalArgumentException("unsupported parameter type " + paramType.getSimpleName());
+        return converter(name, paramType);
+    }
+    
+    private static MethodHandle converter(String name, Class<?> paramType) throws IllegalAccessException {
+        try {
+            return LOOKUP.findStatic(ArgConverters.class, name, MethodType.methodType(paramType, Object.class));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Missing converter " + name, e);
+        }
+    }
+    
+    /**
+     * A resolved overload and the invoker converting this signature's arguments for it
+     */
+    static final class Plan {
+        private final Entry entry;
+        private final MethodHandle invoker;
+        
+        Plan(Entry entry, MethodHandle invoker) {
+            this.entry = entry;
+            this.invoker = invoker;
+        }
+    }
+    
+    /**
+     * A single exposed method, its bound handle and an invoker with the general converters
+     */
+    static final class Entry {
+        private final Method method;
+        private final Class<?>[] paramTypes;
+        private final MethodHandle target;
+        private final MethodHandle invoker;
+        private final ArgConverters.Signature signature;
+        
+        Entry(Method method, MethodHandle target) throws IllegalAccessException {
+            this.method = method;
+            this.paramTypes = method.getParameterTypes();
+            this.target = target;
+            MethodHandle[] converters = new MethodHandle[paramTypes.length];
+            for (int i = 0; i < paramTypes.length; i++) {
+                converters[i] = converterFor(paramTypes[i]);
+            }
+            this.invoker = createInvoker(method, target, converters);
+            this.signature = new ArgConverters.Signature(method.isVarArgs(), paramTypes);
+        }
+        
+        boolean isVarargs() {
+            return signature.isVarargs();
+        }
+        
+        int fixedParameterCount() {
+            return signature.fixedParameterCount();
+        }
+        
+        /**
+         * Converters for the fixed parameters that skip type checks for these argument kinds
+         */
+        MethodHandle[] convertersFor(ArgConverters.ArgKind[] argKinds) throws IllegalAccessException {
+            MethodHandle[] converters = new MethodHandle[paramTypes.length];
+            for (int i = 0; i < paramTypes.length; i++) {
+                String exact = i < fixedParameterCount() ? ArgConverters.exactConverter(paramTypes[i], argKinds[i]) : null;
+                converters[i] = exact != null ? converter(exact, paramTypes[i]) : converterFor(paramTypes[i]);
+            }
+            return converters;
+        }
+        
+        /**
+         * Collect trailing varargs into one array slot; fixed-arity calls pass through
+         */
+        Object[] prepareArguments(Object[] args) {
+            if (!isVarargs()) {
+                return args;
+            }
+            int fixed = fixedParameterCount();
+            Object[] prepared = new Object[fixed + 1];
+            System.arraycopy(args, 0, prepared, 0, fixed);
+            prepared[fixed] = Arrays.copyOfRange(args, fixed, args.length);
+            return prepared;
+        }
+    }
+}
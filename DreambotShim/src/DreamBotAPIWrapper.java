@@ -8,6 +8,7 @@ public class DreamBotAPIWrapper {
     
     private static final AtomicBoolean skipRequested = new AtomicBoolean(false);
     private TaskManager taskManager;
+    private final JobManager jobManager = new JobManager();
     
     // Handler classes
     private BasicUtilities basicUtilities;
@@ -25,7 +26,7 @@ public class DreamBotAPIWrapper {
         // Initialize handler classes
         this.basicUtilities = new BasicUtilities();
         this.playerStateManager = new PlayerStateManager();
-        this.movementHandler = new MovementHandler(taskManager);
+        this.movementHandler = new MovementHandler(taskManager, skipRequested);
         this.bankingManager = new BankingManager(taskManager);
         this.inventoryManager = new InventoryManager(taskManager);
         this.dialogueHandler = new DialogueHandler(taskManager, skipRequested);
@@ -38,6 +39,7 @@ public class DreamBotAPIWrapper {
     /**
      * Simple hello world method
      */
+    @Rpc(kind = Rpc.Kind.QUERY)
     public String helloWorld() {
         return basicUtilities.helloWorld();
     }
@@ -45,6 +47,7 @@ public class DreamBotAPIWrapper {
     /**
      * Greet a person by name
      */
+    @Rpc(kind = Rpc.Kind.QUERY)
     public String greet(String name) {
         return basicUtilities.greet(name);
     }
@@ -52,6 +55,7 @@ public class DreamBotAPIWrapper {
     /**
      * Perform basic calculations
      */
+    @Rpc(kind = Rpc.Kind.QUERY)
     public double calculate(double a, double b, String operation) {
         return basicUtilities.calculate(a, b, operation);
     }
@@ -59,6 +63,7 @@ public class DreamBotAPIWrapper {
     /**
      * Process data with mixed argument types
      */
+    @Rpc(kind = Rpc.Kind.CONTROL)
     public String processData(String filename, int maxLines, boolean verbose) {
         return basicUtilities.processData(filename, maxLines, verbose);
     }
@@ -66,6 +71,7 @@ public class DreamBotAPIWrapper {
     /**
      * Example DreamBot action handler
      */
+    @Rpc
     public String runDreambotAction(String action, String... params) {
         return basicUtilities.runDreambotAction(action, params);
     }
@@ -73,6 +79,7 @@ public class DreamBotAPIWrapper {
     /**
      * Log a message with specified level
      */
+    @Rpc(kind = Rpc.Kind.CONTROL)
     public String logMessage(String level, String message) {
         return basicUtilities.logMessage(level, message);
     }
@@ -82,6 +89,7 @@ public class DreamBotAPIWrapper {
     /**
      * Get player's current location as formatted string
      */
+    @Rpc(kind = Rpc.Kind.QUERY, cacheTtlMs = Rpc.UNTIL_NEXT_TICK)
     public String getPlayerLocation() {
         return playerStateManager.getPlayerLocation();
     }
@@ -89,6 +97,7 @@ public class DreamBotAPIWrapper {
     /**
      * Get player's current X coordinate
      */
+    @Rpc(kind = Rpc.Kind.QUERY, cacheTtlMs = Rpc.UNTIL_NEXT_TICK)
     public int getPlayerX() {
         return playerStateManager.getPlayerX();
     }
@@ -96,6 +105,7 @@ public class DreamBotAPIWrapper {
     /**
      * Get player's current Y coordinate
      */
+    @Rpc(kind = Rpc.Kind.QUERY, cacheTtlMs = Rpc.UNTIL_NEXT_TICK)
     public int getPlayerY() {
         return playerStateManager.getPlayerY();
     }
@@ -103,6 +113,7 @@ public class DreamBotAPIWrapper {
     /**
      * Check if player is moving
      */
+    @Rpc(kind = Rpc.Kind.QUERY, cacheTtlMs = Rpc.UNTIL_NEXT_TICK)
     public boolean isPlayerMoving() {
         return playerStateManager.isPlayerMoving();
     }
@@ -110,6 +121,7 @@ public class DreamBotAPIWrapper {
     /**
      * Get player's skill level
      */
+    @Rpc(kind = Rpc.Kind.QUERY, cacheTtlMs = 600)
     public int getSkillLevel(String skillName) {
         return playerStateManager.getSkillLevel(skillName);
     }
@@ -117,6 +129,7 @@ public class DreamBotAPIWrapper {
     /**
      * Check if player is animating (doing an action)
      */
+    @Rpc(kind = Rpc.Kind.QUERY, cacheTtlMs = Rpc.UNTIL_NEXT_TICK)
     public boolean isPlayerAnimating() {
         return playerStateManager.isPlayerAnimating();
     }
@@ -127,13 +140,24 @@ public class DreamBotAPIWrapper {
      * DreamBot-specific walking method - Enhanced with unlimited attempts until arrival and skip support
      * Supports 3D coordinates with z (plane) parameter
      */
+    @Rpc
     public String walkToLocation(int x, int y, int z) {
         return movementHandler.walkToLocation(x, y, z);
     }
     
+    /**
+     * Start walking to a location in the background and return a job id
+     */
+    @Rpc
+    public String walkToLocationAsync(int x, int y, int z) {
+        return jobManager.submit("walkToLocation(" + x + ", " + y + ", " + z + ")",
+                () -> movementHandler.walkToLocation(x, y, z)).getId();
+    }
+    
     /**
      * Request to skip the current operation
      */
+    @Rpc(kind = Rpc.Kind.CONTROL)
     public String requestSkip() {
         return movementHandler.requestSkip();
     }
@@ -143,6 +167,7 @@ public class DreamBotAPIWrapper {
     /**
      * Check if bank is actually open using DreamBot API
      */
+    @Rpc(kind = Rpc.Kind.QUERY, cacheTtlMs = Rpc.UNTIL_NEXT_TICK)
     public boolean bankIsOpen() {
         return bankingManager.bankIsOpen();
     }
@@ -150,6 +175,7 @@ public class DreamBotAPIWrapper {
     /**
      * Open bank using DreamBot API - Enhanced version with skip support
      */
+    @Rpc
     public String openBank() {
         return bankingManager.openBank();
     }
@@ -157,6 +183,7 @@ public class DreamBotAPIWrapper {
     /**
      * Close bank using DreamBot API
      */
+    @Rpc
     public String closeBank() {
         return bankingManager.closeBank();
     }
@@ -164,6 +191,7 @@ public class DreamBotAPIWrapper {
     /**
      * Deposit all items except specified items
      */
+    @Rpc
     public String depositAllExcept(String... itemsToKeep) {
         return bankingManager.depositAllExcept(itemsToKeep);
     }
@@ -171,6 +199,7 @@ public class DreamBotAPIWrapper {
     /**
      * Deposit specific item with count
      */
+    @Rpc
     public String depositItem(String itemName, int count) {
         return bankingManager.depositItem(itemName, count);
     }
@@ -178,6 +207,7 @@ public class DreamBotAPIWrapper {
     /**
      * Withdraw specific item with count
      */
+    @Rpc
     public String withdrawItem(String itemName, int count) {
         return bankingManager.withdrawItem(itemName, count);
     }
@@ -185,6 +215,7 @@ public class DreamBotAPIWrapper {
     /**
      * Check if bank contains specific item
      */
+    @Rpc(kind = Rpc.Kind.QUERY, cacheTtlMs = 600)
     public boolean bankContains(String itemName) {
         return bankingManager.bankContains(itemName);
     }
@@ -192,6 +223,7 @@ public class DreamBotAPIWrapper {
     /**
      * Get bank item count
      */
+    @Rpc(kind = Rpc.Kind.QUERY, cacheTtlMs = 600)
     public int getBankItemCount(String itemName) {
         return bankingManager.getBankItemCount(itemName);
     }
@@ -201,6 +233,7 @@ public class DreamBotAPIWrapper {
     /**
      * Get real inventory count from DreamBot API
      */
+    @Rpc(kind = Rpc.Kind.QUERY, cacheTtlMs = Rpc.UNTIL_NEXT_TICK)
     public int getInventoryCount() {
         return inventoryManager.getInventoryCount();
     }
@@ -208,6 +241,7 @@ public class DreamBotAPIWrapper {
     /**
      * Use one item on another item in inventory (item combination/crafting)
      */
+    @Rpc
     public String useItemOnItem(String primaryItem, String secondaryItem, boolean useItemIds) {
         return inventoryManager.useItemOnItem(primaryItem, secondaryItem, useItemIds);
     }
@@ -216,6 +250,7 @@ public class DreamBotAPIWrapper {
      * Perform a custom action on an item, or use an item on a game object
      * Examples: "Eat" on "Lobster", use "Bread" on "Oven", "Drop" an item, etc.
      */
+    @Rpc
     public String performItemAction(String action, String item, String target, boolean useItemIds, String targetType) {
         return inventoryManager.performItemAction(action, item, target, useItemIds, targetType);
     }
@@ -224,6 +259,7 @@ public class DreamBotAPIWrapper {
      * Check if inventory contains a specific item and return count
      * Returns -1 if item not found, 0+ for actual count
      */
+    @Rpc(kind = Rpc.Kind.QUERY, cacheTtlMs = Rpc.UNTIL_NEXT_TICK)
     public int checkInventoryForItem(String itemName, boolean useItemId) {
         return inventoryManager.checkInventoryForItem(itemName, useItemId);
     }
@@ -232,6 +268,7 @@ public class DreamBotAPIWrapper {
      * Check if inventory contains a specific item (boolean result)
      * Simple true/false check without count
      */
+    @Rpc(kind = Rpc.Kind.QUERY, cacheTtlMs = Rpc.UNTIL_NEXT_TICK)
     public boolean inventoryContainsItem(String itemName, boolean useItemId) {
         return inventoryManager.inventoryContainsItem(itemName, useItemId);
     }
@@ -242,15 +279,26 @@ public class DreamBotAPIWrapper {
      * Handle NPC dialogue interactions, waiting for all dialogue to complete.
      * Based on Tutorial Island DialogueHandler pattern.
      */
+    @Rpc
     public String handleNPCDialogue(String npcName, int maxWaitTime) {
         return dialogueHandler.handleNPCDialogue(npcName, maxWaitTime);
     }
     
+    /**
+     * Start handling NPC dialogue in the background and return a job id
+     */
+    @Rpc
+    public String handleNPCDialogueAsync(String npcName, int maxWaitTime) {
+        return jobManager.submit("handleNPCDialogue(" + npcName + ")",
+                () -> dialogueHandler.handleNPCDialogue(npcName, maxWaitTime)).getId();
+    }
+    
     // ===== Game Object Methods (delegated to GameObjectInteractor) =====
     
     /**
      * DreamBot-specific object interaction
      */
+    @Rpc
     public String clickObject(String objectName) {
         return gameObjectInteractor.clickObject(objectName);
     }
@@ -258,6 +306,7 @@ public class DreamBotAPIWrapper {
     /**
      * List all nearby game objects within range
      */
+    @Rpc(kind = Rpc.Kind.QUERY)
     public String listNearbyGameObjects() {
         return gameObjectInteractor.listNearbyGameObjects();
     }
@@ -265,6 +314,7 @@ public class DreamBotAPIWrapper {
     /**
      * Get game objects suitable for a specific action (e.g., "go up", "climb down", "enter")
      */
+    @Rpc(kind = Rpc.Kind.QUERY)
     public String getGameObjectsForAction(String action) {
         return gameObjectInteractor.getGameObjectsForAction(action);
     }
@@ -272,6 +322,7 @@ public class DreamBotAPIWrapper {
     /**
      * Search for game objects by name or partial name match
      */
+    @Rpc(kind = Rpc.Kind.QUERY)
     public String searchGameObjects(String searchTerm) {
         return gameObjectInteractor.searchGameObjects(searchTerm);
     }
@@ -279,6 +330,7 @@ public class DreamBotAPIWrapper {
     /**
      * Get detailed information about a specific game object
      */
+    @Rpc(kind = Rpc.Kind.QUERY)
     public String getObjectDetails(String objectName) {
         return gameObjectInteractor.getObjectDetails(objectName);
     }
@@ -288,13 +340,24 @@ public class DreamBotAPIWrapper {
     /**
      * Pick up a ground item by name
      */
+    @Rpc
     public String pickupGroundItem(String itemName) {
         return groundItemHandler.pickupGroundItem(itemName);
     }
     
+    /**
+     * Start picking up a ground item in the background and return a job id
+     */
+    @Rpc
+    public String pickupGroundItemAsync(String itemName) {
+        return jobManager.submit("pickupGroundItem(" + itemName + ")",
+                () -> groundItemHandler.pickupGroundItem(itemName)).getId();
+    }
+    
     /**
      * Pick up a ground item by ID
      */
+    @Rpc
     public String pickupGroundItemById(int itemId) {
         return groundItemHandler.pickupGroundItemById(itemId);
     }
@@ -302,6 +365,7 @@ public class DreamBotAPIWrapper {
     /**
      * Get information about nearby ground items
      */
+    @Rpc(kind = Rpc.Kind.QUERY)
     public String getNearbyGroundItems() {
         return groundItemHandler.getNearbyGroundItems();
     }
@@ -309,6 +373,7 @@ public class DreamBotAPIWrapper {
     /**
      * Check if a specific ground item exists nearby
      */
+    @Rpc(kind = Rpc.Kind.QUERY, cacheTtlMs = Rpc.UNTIL_NEXT_TICK)
     public boolean groundItemExists(String itemName) {
         return groundItemHandler.groundItemExists(itemName);
     }
@@ -316,15 +381,58 @@ public class DreamBotAPIWrapper {
     /**
      * Get the distance to the closest ground item by name
      */
+    @Rpc(kind = Rpc.Kind.QUERY, cacheTtlMs = Rpc.UNTIL_NEXT_TICK)
     public double getDistanceToGroundItem(String itemName) {
         return groundItemHandler.getDistanceToGroundItem(itemName);
     }
     
+    // ===== Job Methods (delegated to JobManager) =====
+    
+    /**
+     * Get the status, progress and result of a background job as JSON
+     */
+    @Rpc(kind = Rpc.Kind.CONTROL)
+    public String jobStatus(String jobId) {
+        Job job = jobManager.get(jobId);
+        return job != null ? job.toJson() : "Error: Unknown job '" + jobId + "'";
+    }
+    
+    /**
+     * Wait up to timeoutMs for a background job to finish, then return its status as JSON
+     */
+    @Rpc(kind = Rpc.Kind.CONTROL)
+    public String awaitJob(String jobId, int timeoutMs) {
+        try {
+            Job job = jobManager.await(jobId, timeoutMs);
+            return job != null ? job.toJson() : "Error: Unknown job '" + jobId + "'";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Error: Interrupted while waiting for job '" + jobId + "'";
+        }
+    }
+    
+    /**
+     * Cancel a background job; it stops at its next cancellation check
+     */
+    @Rpc(kind = Rpc.Kind.CONTROL)
+    public String cancelJob(String jobId) {
+        Job job = jobManager.get(jobId);
+        if (job == null) {
+            return "Error: Unknown job '" + jobId + "'";
+        }
+        return job.cancel() ? "Cancel requested for job " + jobId : "Job " + jobId + " already finished";
+    }
+    
+    JobManager getJobManager() {
+        return jobManager;
+    }
+    
     // ===== Task Management Methods =====
     
     /**
      * Add an upcoming step to the task queue
      */
+    @Rpc(kind = Rpc.Kind.CONTROL)
     public String addUpcomingStep(String step) {
         try {
             taskManager.addUpcomingStep(step);
@@ -337,6 +445,7 @@ public class DreamBotAPIWrapper {
     /**
      * Clear all upcoming steps
      */
+    @Rpc(kind = Rpc.Kind.CONTROL)
     public String clearUpcomingSteps() {
         try {
             taskManager.clearUpcomingSteps();
@@ -349,6 +458,7 @@ public class DreamBotAPIWrapper {
     /**
      * Get the number of upcoming steps
      */
+    @Rpc(kind = Rpc.Kind.QUERY)
     public int getUpcomingStepsCount() {
         try {
             return taskManager.getUpcomingStepsCount();
@@ -360,6 +470,7 @@ public class DreamBotAPIWrapper {
     /**
      * Check if there are any upcoming steps
      */
+    @Rpc(kind = Rpc.Kind.QUERY)
     public boolean hasUpcomingSteps() {
         try {
             return taskManager.hasUpcomingSteps();
@@ -371,6 +482,7 @@ public class DreamBotAPIWrapper {
     /**
      * Get the next upcoming step without removing it
      */
+    @Rpc(kind = Rpc.Kind.QUERY)
     public String peekNextStep() {
         try {
             if (taskManager.hasUpcomingSteps()) {
@@ -387,6 +499,7 @@ public class DreamBotAPIWrapper {
     /**
      * Remove and return the next upcoming step
      */
+    @Rpc(kind = Rpc.Kind.CONTROL)
     public String getNextStep() {
         try {
             String nextStep = taskManager.getNextStep();
@@ -0,0 +1,262 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.dreambot.api.methods.skills.Skill;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Detects state transitions between consecutive WorldStates and pushes them as
+ * event lines to the connections that subscribed to them.
+ * Event lines look like {"event": "animationStarted", "tick": 42, "data": {...}}.
+ * A disconnected client's subscriptions are parked under its session's resume token
+ * for a while so it can take them back when it reconnects; events in between are lost.
+ */
+public class EventPublisher {
+    
+    /**
+     * Event groups a client can subscribe to
+     */
+    public enum EventType {
+        ANIMATION("animation"),
+        INVENTORY("inventory"),
+        BANK("bank"),
+        DIALOGUE("dialogue"),
+        TILE("tile"),
+        SKILL("skill");
+        
+        private final String wireName;
+        
+        EventType(String wireName) {
+            this.wireName = wireName;
+        }
+        
+        public String getWireName() {
+            return wireName;
+        }
+        
+        /**
+         * Parse a subscription name; "all" is handled by the caller
+         */
+        public static EventType fromWireName(String name) {
+            for (EventType type : values()) {
+                if (type.wireName.equalsIgnoreCase(name)) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown event type: " + name);
+        }
+    }
+    
+    private static final Gson gson = new Gson();
+    private final Map<ShimConnection, Set<EventType>> subscriptions = new ConcurrentHashMap<>();
+    private final Map<String, Parked> parked = new ConcurrentHashMap<>();
+    
+    /**
+     * Add event types to a connection's subscription; no names or "all" subscribes to everything
+     */
+    public Set<EventType> subscribe(ShimConnection connection, String... eventTypes) {
+        Set<EventType> requested = parse(eventTypes);
+        Set<EventType> current = subscriptions.computeIfAbsent(connection,
+                c -> Collections.synchronizedSet(EnumSet.noneOf(EventType.class)));
+        current.addAll(requested);
+        System.out.println("Connection " + connection.getId() + " subscribed to " + current);
+        return snapshot(current);
+    }
+    
+    /**
+     * Remove event types from a connection's subscription; no names or "all" removes everything
+     */
+    public Set<EventType> unsubscribe(ShimConnection connection, String... eventTypes) {
+        Set<EventType> current = subscriptions.get(connection);
+        if (current == null) {
+            return EnumSet.noneOf(EventType.class);
+        }
+        current.removeAll(parse(eventTypes));
+        if (current.isEmpty()) {
+            subscriptions.remove(connection);
+        }
+        return snapshot(current);
+    }
+    
+    /**
+     * Event types a connection is subscribed to
+     */
+    public Set<EventType> getSubscriptions(ShimConnection connection) {
+        Set<EventType> current = subscriptions.get(connection);
+        return current != null ? snapshot(current) : EnumSet.noneOf(EventType.class);
+    }
+    
+    /**
+     * Forget a disconnected client
+     */
+    public void remove(ShimConnection connection) {
+        subscriptions.remove(connection);
+    }
+    
+    /**
+     * Forget a disconnected client but keep its subscriptions under a resume token
+     */
+    public void park(ShimConnection connection, String resumeToken) {
+        Set<EventType> current = subscriptions.remove(connection);
+        if (current != null && !current.isEmpty()) {
+            parked.put(resumeToken, new Parked(snapshot(current)));
+        }
+    }
+    
+    /**
+     * Give the subscriptions parked under a resume token to a new connection; returns
+     * what was restored, empty if the token is unknown or expired
+     */
+    public Set<EventType> resume(String resumeToken, ShimConnection connection) {
+        Parked restored = parked.remove(resumeToken);
+        if (restored == null) {
+            return EnumSet.noneOf(EventType.class);
+        }
+        Set<EventType> current = subscriptions.computeIfAbsent(connection,
+                c -> Collections.synchronizedSet(EnumSet.noneOf(EventType.class)));
+        current.addAll(restored.types);
+        System.out.println("Connection " + connection.getId() + " resumed subscriptions " + restored.types);
+        return snapshot(current);
+    }
+    
+    /**
+     * Drop parked subscriptions nobody came back for within maxAgeMillis
+     */
+    public void expireParked(long maxAgeMillis) {
+        long now = System.currentTimeMillis();
+        parked.values().removeIf(p -> now - p.parkedAtMillis > maxAgeMillis);
+    }
+    
+    /**
+     * Number of parked subscriptions waiting for their client
+     */
+    public int getParkedCount() {
+        return parked.size();
+    }
+    
+    /**
+     * Check if anyone is listening, so the loop can skip diffing
+     */
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+    
+    /**
+     * Diff two consecutive states and push every detected transition (script thread)
+     */
+    public void publish(WorldState previous, WorldState current) {
+        if (previous == null || current == null || subscriptions.isEmpty()) {
+            return;
+        }
+        long tick = current.getTick();
+        
+        if (previous.isAnimating() != current.isAnimating()) {
+            emit(EventType.ANIMATION, current.isAnimating() ? "animationStarted" : "animationStopped", tick, new JsonObject());
+        }
+        
+        if (previous.isBankOpen() != current.isBankOpen()) {
+            emit(EventType.BANK, current.isBankOpen() ? "bankOpened" : "bankClosed", tick, new JsonObject());
+        }
+        
+        if (previous.isInDialogue() != current.isInDialogue()) {
+            emit(EventType.DIALOGUE, current.isInDialogue() ? "dialogueAppeared" : "dialogueClosed", tick, new JsonObject());
+        }
+        
+        if (previous.getX() != current.getX() || previous.getY() != current.getY()
+                || previous.getPlane() != current.getPlane()) {
+            JsonObject data = new JsonObject();
+            data.addProperty("fromX", previous.getX());
+            data.addProperty("fromY", previous.getY());
+            data.addProperty("fromZ", previous.getPlane());
+            data.addProperty("x", current.getX());
+            data.addProperty("y", current.getY());
+            data.addProperty("z", current.getPlane());
+            emit(EventType.TILE, "playerTileChanged", tick, data);
+        }
+        
+        for (int slot = 0; slot < WorldState.INVENTORY_SLOTS; slot++) {
+            if (previous.getInventoryId(slot) != current.getInventoryId(slot)
+                    || previous.getInventoryCount(slot) != current.getInventoryCount(slot)) {
+                JsonObject data = new JsonObject();
+                data.addProperty("slot", slot);
+                data.addProperty("oldId", previous.getInventoryId(slot));
+                data.addProperty("oldCount", previous.getInventoryCount(slot));
+                data.addProperty("id", current.getInventoryId(slot));
+                data.addProperty("count", current.getInventoryCount(slot));
+                emit(EventType.INVENTORY, "inventorySlotChanged", tick, data);
+            }
+        }
+        
+        Skill[] skills = Skill.values();
+        int skillCount = Math.min(previous.getSkillCount(), current.getSkillCount());
+        for (int i = 0; i < skillCount; i++) {
+            int oldLevel = previous.getSkillLevel(i);
+            int newLevel = current.getSkillLevel(i);
+            // Ignore the -1 placeholder for levels that could not be read
+            if (oldLevel >= 0 && newLevel > oldLevel) {
+                JsonObject data = new JsonObject();
+                data.addProperty("skill", i < skills.length ? skills[i].name() : String.valueOf(i));
+                data.addProperty("oldLevel", oldLevel);
+                data.addProperty("level", newLevel);
+                emit(EventType.SKILL, "skillLevelUp", tick, data);
+            }
+        }
+    }
+    
+    private void emit(EventType type, String eventName, long tick, JsonObject data) {
+        JsonObject event = new JsonObject();
+        event.addProperty("event", eventName);
+        event.addProperty("type", type.getWireName());
+        event.addProperty("tick", tick);
+        event.add("data", data);
+        String line = gson.toJson(event);
+        byte[] frame = null;
+        
+        for (Map.Entry<ShimConnection, Set<EventType>> entry : subscriptions.entrySet()) {
+            ShimConnection connection = entry.getKey();
+            if (!entry.getValue().contains(type) || !connection.isOpen()) {
+                continue;
+            }
+            if (connection.isBinary()) {
+                if (frame == null) {
+                    frame = BinaryCodec.encodeEvent(line);
+                }
+                connection.sendFrame(frame);
+            } else {
+                connection.send(line);
+            }
+        }
+    }
+    
+    private static Set<EventType> parse(String... eventTypes) {
+        if (eventTypes == null || eventTypes.length == 0) {
+            return EnumSet.allOf(EventType.class);
+        }
+        Set<EventType> parsed = EnumSet.noneOf(EventType.class);
+        for (String name : eventTypes) {
+            if (name.equalsIgnoreCase("all")) {
+                return EnumSet.allOf(EventType.class);
+            }
+            parsed.add(EventType.fromWireName(name.trim()));
+        }
+        return parsed;
+    }
+    
+    private static final class Parked {
+        final Set<EventType> types;
+        final long parkedAtMillis = System.currentTimeMillis();
+        
+        Parked(Set<EventType> types) {
+            this.types = types;
+        }
+    }
+    
+    private static Set<EventType> snapshot(Set<EventType> types) {
+        synchronized (types) {
+            return types.isEmpty() ? EnumSet.noneOf(EventType.class) : EnumSet.copyOf(types);
+        }
+    }
+}
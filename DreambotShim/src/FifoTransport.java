@@ -0,0 +1,398 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * Named pipe transport: one request FIFO and one response FIFO created with mkfifo.
+ * The shared pair serves a single client at a time; a client session lasts from
+ * opening the request pipe until its writer closes it. Each session starts in JSON
+ * lines and may switch to binary frames with the hello handshake.
+ *
+ * Clients that run alongside others get a private pair instead: they mkfifo
+ * "<pipe>.<name>" and "<response pipe>.<name>" themselves and write "open <name>"
+ * to the "<pipe>.sessions" FIFO. The pair is served until the client closes its
+ * request pipe and is then removed.
+ *
+ * Replies are written by each response pipe's own thread (see ResponseChannel), so a
+ * client that stops reading holds up nothing but its own replies. A session the shim
+ * drops (close()) stays dropped until its writer closes the request pipe: anything it
+ * sends meanwhile is read and discarded rather than starting a new session.
+ */
+public class FifoTransport implements ShimTransport {
+    
+    static final String SESSIONS_SUFFIX = ".sessions";
+    private static final String OPEN_COMMAND = "open ";
+    private static final Pattern SESSION_NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    
+    private final String pipeName;
+    private final String responsePipeName;
+    private final String sessionsPipeName;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final FifoConnection connection;
+    private final Map<String, FifoConnection> privateConnections = new ConcurrentHashMap<>();
+    private Thread listenerThread;
+    private Thread sessionsThread;
+    
+    public FifoTransport(String pipeName, String responsePipeName) {
+        this.pipeName = pipeName;
+        this.responsePipeName = responsePipeName;
+        this.sessionsPipeName = pipeName + SESSIONS_SUFFIX;
+        this.connection = new FifoConnection("fifo:" + pipeName, new ResponseChannel(responsePipeName));
+    }
+    
+    @Override
+    public void start(Listener listener) throws IOException {
+        try {
+            createNamedPipe(pipeName);
+            createNamedPipe(responsePipeName);
+            createNamedPipe(sessionsPipeName);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while creating named pipes", e);
+        }
+        startListening(listener);
+        startSessionListener(listener);
+    }
+    
+    /**
+     * Create the named pipe using mkfifo command
+     */
+    private static void createNamedPipe(String name) throws IOException, InterruptedException {
+        if (!Files.exists(Paths.get(name))) {
+            Process mkfifoProcess = Runtime.getRuntime().exec(new String[]{"mkfifo", name});
+            int exitCode = mkfifoProcess.waitFor();
+            if (exitCode != 0) {
+                throw new IOException("Failed to create named pipe with mkfifo: " + name);
+            }
+            System.out.println("Created named pipe: " + name);
+        } else {
+            System.out.println("Named pipe already exists: " + name);
+        }
+    }
+    
+    /**
+     * Start the listening thread
+     */
+    private void startListening(Listener listener) {
+        running.set(true);
+        listenerThread = new Thread(() -> {
+            System.out.println("Started listening for method calls on " + pipeName);
+            
+            while (running.get()) {
+                try {
+                    serve(connection, pipeName, listener);
+                } catch (IOException e) {
+                    if (running.get()) {
+                        System.err.println("Error reading from pipe: " + e.getMessage());
+                        try {
+                            Thread.sleep(1000); // Wait before retrying
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
+                }
+            }
+            
+            System.out.println("Stopped listening for method calls");
+        }, "shim-fifo-listener");
+        
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+    
+    /**
+     * Listen for clients asking for a private pipe pair on the sessions FIFO
+     */
+    private void startSessionListener(Listener listener) {
+        sessionsThread = new Thread(() -> {
+            while (running.get()) {
+                // Several clients may write here; lines this short are written atomically
+                try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(sessionsPipeName)))) {
+                    String line;
+                    while (running.get() && (line = readLine(input)) != null) {
+                        line = line.trim();
+                        if (line.startsWith(OPEN_COMMAND)) {
+                            openPrivateSession(line.substring(OPEN_COMMAND.length()).trim(), listener);
+                        } else if (!line.isEmpty()) {
+                            System.err.println("Unknown session command: " + line);
+                        }
+                    }
+                } catch (IOException e) {
+                    if (running.get()) {
+                        System.err.println("Error reading from sessions pipe: " + e.getMessage());
+                        try {
+                            Thread.sleep(1000);
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
+                }
+            }
+        }, "shim-fifo-sessions");
+        sessionsThread.setDaemon(true);
+        sessionsThread.start();
+    }
+    
+    /**
+     * Serve one client on its own pipe pair until it closes its request pipe
+     */
+    private void openPrivateSession(String name, Listener listener) {
+        String requestPipe = pipeName + "." + name;
+        String replyPipe = responsePipeName + "." + name;
+        if (!SESSION_NAME.matcher(name).matches() || !Files.exists(Paths.get(requestPipe))
+                || !Files.exists(Paths.get(replyPipe))) {
+            System.err.println("Ignoring session '" + name + "': bad name or its pipes do not exist");
+            return;
+        }
+        FifoConnection privateConnection = new FifoConnection("fifo:" + requestPipe, new ResponseChannel(replyPipe));
+        if (privateConnections.putIfAbsent(name, privateConnection) != null) {
+            System.err.println("Session '" + name + "' is already open");
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                serve(privateConnection, requestPipe, listener);
+            } catch (IOException e) {
+                System.err.println("Error on session pipe " + requestPipe + ": " + e.getMessage());
+                privateConnection.endSession();
+            } finally {
+                privateConnections.remove(name, privateConnection);
+                privateConnection.shutdown();
+                deletePipes(requestPipe, replyPipe);
+            }
+        }, "shim-fifo-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Read one client session from a request pipe, from its writer opening it until it closes it
+     */
+    private void serve(FifoConnection client, String requestPipe, Listener listener) throws IOException {
+        // Opening the FIFO for reading blocks until a client opens it for writing
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(requestPipe)))) {
+            client.beginSession();
+            listener.onConnect(client);
+            try {
+                while (running.get()) {
+                    if (client.isBinary()) {
+                        byte[] frame = readFrame(input);
+                        if (frame == null) {
+                            break;
+                        }
+                        if (client.admit()) {
+                            listener.onFrame(client, ByteBuffer.wrap(frame));
+                        }
+                    } else {
+                        String line = readLine(input);
+                        if (line == null) {
+                            break;
+                        }
+                        if (!line.trim().isEmpty() && client.admit()) {
+                            listener.onRequest(client, line.trim());
+                        }
+                    }
+                }
+            } finally {
+                // Writer closed its end - the client session is over, release the response pipe
+                client.endSession();
+                listener.onDisconnect(client);
+            }
+        }
+    }
+    
+    private static void deletePipes(String... names) {
+        for (String name : names) {
+            try {
+                Files.deleteIfExists(Paths.get(name));
+            } catch (IOException e) {
+                System.err.println("Error removing pipe " + name + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Read one newline-terminated UTF-8 line, or null at end of stream. A line over
+     * BinaryCodec.MAX_FRAME_BYTES fails the read and ends the session as a bad frame does,
+     * so a writer that never sends a newline can't grow the buffer forever.
+     */
+    private static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = input.read()) != -1 && b != '\n') {
+            if (line.size() == BinaryCodec.MAX_FRAME_BYTES) {
+                throw new IOException("Request line exceeds " + BinaryCodec.MAX_FRAME_BYTES + " bytes");
+            }
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Read one length-prefixed frame body, or null at end of stream
+     */
+    private static byte[] readFrame(DataInputStream input) throws IOException {
+        int length;
+        try {
+            length = input.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length <= 0 || length > BinaryCodec.MAX_FRAME_BYTES) {
+            throw new IOException("Bad frame length " + length);
+        }
+        byte[] frame = new byte[length];
+        input.readFully(frame);
+        return frame;
+    }
+    
+    @Override
+    public void stop() {
+        running.set(false);
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+        if (sessionsThread != null) {
+            sessionsThread.interrupt();
+        }
+        connection.shutdown();
+        for (Map.Entry<String, FifoConnection> entry : privateConnections.entrySet()) {
+            entry.getValue().shutdown();
+            deletePipes(pipeName + "." + entry.getKey(), responsePipeName + "." + entry.getKey());
+        }
+        
+        // Remove the shared pipes
+        deletePipes(pipeName, responsePipeName, sessionsPipeName);
+        System.out.println("Named pipe transport stopped and cleaned up");
+    }
+    
+    @Override
+    public String getEndpoint() {
+        return pipeName + " -> " + responsePipeName;
+    }
+    
+    @Override
+    public Map<String, String> getRegistryEndpoints() {
+        Map<String, String> endpoints = new LinkedHashMap<>();
+        endpoints.put("pipe", pipeName);
+        endpoints.put("responsePipe", responsePipeName);
+        endpoints.put("sessionsPipe", sessionsPipeName);
+        return endpoints;
+    }
+    
+    /**
+     * A FIFO client; replies go through the persistent response channel
+     */
+    private static class FifoConnection implements ShimConnection {
+        private final String id;
+        private final ResponseChannel responseChannel;
+        private volatile boolean open;
+        private volatile boolean binary;
+        /** Set when the shim drops the session; its writer is ignored until it reopens the pipe */
+        private volatile boolean closed;
+        /** Reader thread only: the drop has been logged */
+        private boolean ignoring;
+        
+        FifoConnection(String id, ResponseChannel responseChannel) {
+            this.id = id;
+            this.responseChannel = responseChannel;
+        }
+        
+        @Override
+        public String getId() {
+            return id;
+        }
+        
+        @Override
+        public void send(String line) {
+            responseChannel.send(line);
+        }
+        
+        @Override
+        public void sendFrame(byte[] frame) {
+            responseChannel.sendFrame(frame);
+        }
+        
+        @Override
+        public long getWriteStallMillis() {
+            return responseChannel.getStallMillis();
+        }
+        
+        @Override
+        public boolean isBinary() {
+            return binary;
+        }
+        
+        @Override
+        public void switchToBinary() {
+            binary = true;
+        }
+        
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+        
+        /**
+         * Drop the session. A FIFO has no way to hang up on its writer, so whatever it
+         * still sends is discarded until it closes the pipe and a new session begins.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            endSession();
+        }
+        
+        void beginSession() {
+            binary = false;
+            closed = false;
+            ignoring = false;
+            open = true;
+        }
+        
+        /**
+         * Check if a request read from the pipe belongs to a live session (reader thread)
+         */
+        boolean admit() {
+            if (!closed) {
+                return true;
+            }
+            if (!ignoring) {
+                ignoring = true;
+                System.err.println("Ignoring requests on " + id + " from a dropped session until its writer reopens the pipe");
+            }
+            return false;
+        }
+        
+        void endSession() {
+            open = false;
+            responseChannel.close();
+        }
+        
+        /**
+         * End the session and stop the response pipe's writer thread for good
+         */
+        void shutdown() {
+            open = false;
+            responseChannel.shutdown();
+        }
+    }
+}
@@ -68,7 +68,7 @@ public class GameObjectInteractor {
                 taskManager.setCurrentStep("Waiting after interaction (" + delayMs + "ms)");
                 
                 try {
-                    Thread.sleep(delayMs);
+                    RequestContext.sleep(delayMs);
                 } catch (InterruptedException ie) {
                     Logger.log("Python->Java: Delay interrupted: " + ie.getMessage());
                     Thread.currentThread().interrupt(); // Restore interrupted status
@@ -0,0 +1,353 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Runs API calls from the shim's worker threads on the script thread, so they read the
+ * client between loop iterations instead of racing painting and input. Workers enqueue
+ * into a lock-free queue and block on a future; Main.onLoop drains the queue each
+ * iteration within a time budget and hands DreamBot a sleep that is short while calls
+ * keep coming and backs off while they don't.
+ *
+ * Actions wait for seconds at a time, so they run on their worker instead but only in
+ * steps: the worker takes a lease, the script thread stays in drain() while it holds
+ * it, and every wait inside the action (RequestContext.sleepUntil and sleep) hands the
+ * script thread back until the wait is over. The script thread holds a step no longer
+ * than what is left of the drain's budget; a step still running then is queued again
+ * and held on by the next drain, so the loop keeps ticking and painting.
+ *
+ * While the script loop is not running (paused, or the shim is hosted outside DreamBot)
+ * calls run on the calling thread as before.
+ */
+public class GameThreadExecutor {
+    
+    /**
+     * Outcome of acquireLease()
+     */
+    public enum LeaseResult {
+        /** The caller has the script thread until releaseLease() */
+        GRANTED,
+        /** The executor is off or the loop is not running, so the step runs unsynchronized as before */
+        UNSYNCHRONIZED,
+        /** The deadline passed, the job was cancelled, the worker was interrupted or already holds a lease */
+        REFUSED
+    }
+    
+    /** The loop counts as stopped when it has not drained for this long */
+    private static final long DETACHED_AFTER_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /** Callers without a deadline re-check that the loop is alive this often while waiting */
+    private static final long WAIT_SLICE_MILLIS = 250;
+    /** Loop sleep right after a drain that ran calls; doubles on every empty one */
+    private static final long ACTIVE_SLEEP_MS = 5;
+    
+    private final boolean enabled;
+    private final long budgetNanos;
+    private final Queue<Command> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong lastDrainNanos = new AtomicLong(System.nanoTime() - DETACHED_AFTER_NANOS);
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong inline = new AtomicLong();
+    private final AtomicLong drains = new AtomicLong();
+    private final AtomicLong overBudget = new AtomicLong();
+    private final AtomicLong steps = new AtomicLong();
+    private final AtomicLong longSteps = new AtomicLong();
+    /** Lease held by the calling worker while it runs a step of an action */
+    private final ThreadLocal<Lease> lease = new ThreadLocal<>();
+    private volatile long maxDrainNanos;
+    /** The script thread while it is inside drain() */
+    private volatile Thread drainer;
+    /** When the current drain's budget runs out (script thread) */
+    private long drainDeadlineNanos;
+    /** Drains in a row that found nothing to run (script thread) */
+    private int emptyDrains;
+    
+    public GameThreadExecutor(boolean enabled, long budgetMs) {
+        this.enabled = enabled;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMs);
+    }
+    
+    /**
+     * Run a call on the script thread and wait for its result, bounded by the current
+     * request's deadline. Runs it inline when the script loop is not draining.
+     */
+    public Object call(String method, Supplier<Object> task) {
+        if (!enabled || !isAttached() || lease.get() != null || isScriptThread()) {
+            // A worker holding a lease already has the script thread to itself, and a
+            // command already running on it (such as a batch of queries) just carries on
+            inline.incrementAndGet();
+            return task.get();
+        }
+        Command command = new Command(task);
+        queue.offer(command);
+        
+        RequestContext context = RequestContext.current();
+        try {
+            while (true) {
+                long wait = context != null ? Math.min(WAIT_SLICE_MILLIS, context.remainingMillis()) : WAIT_SLICE_MILLIS;
+                try {
+                    return command.result.get(Math.max(1, wait), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // The loop stopped with this call still queued: take it back and run it here
+                    if (!isAttached() && command.claim()) {
+                        inline.incrementAndGet();
+                        return task.get();
+                    }
+                    if (context != null && context.isExpired() && command.claim()) {
+                        return "Error executing method '" + method + "': deadline passed waiting for the game thread";
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            return "Error executing method '" + method + "': " + cause.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            command.claim();
+            return "Error executing method '" + method + "': interrupted";
+        }
+    }
+    
+    /**
+     * Run queued calls until the queue is empty or this iteration's budget is spent
+     * (script thread). Returns the number of calls run.
+     */
+    public int drain() {
+        long start = System.nanoTime();
+        lastDrainNanos.set(start);
+        drains.incrementAndGet();
+        drainer = Thread.currentThread();
+        drainDeadlineNanos = start + budgetNanos;
+        int count = 0;
+        Command command;
+        while ((command = queue.poll()) != null) {
+            if (command.claim()) {
+                command.run();
+                count++;
+                // An action step may have kept us here a while; we are still draining
+                lastDrainNanos.set(System.nanoTime());
+            }
+            if (System.nanoTime() - start >= budgetNanos) {
+                if (!queue.isEmpty()) {
+                    overBudget.incrementAndGet();
+                }
+                break;
+            }
+        }
+        drainer = null;
+        long elapsed = System.nanoTime() - start;
+        if (elapsed > maxDrainNanos) {
+            maxDrainNanos = elapsed;
+        }
+        executed.addAndGet(count);
+        emptyDrains = count > 0 ? 0 : Math.min(emptyDrains + 1, 16);
+        return count;
+    }
+    
+    /**
+     * The sleep for onLoop to hand back to DreamBot after a drain (script thread): none
+     * when calls are still queued, short while they keep coming, up to idleMs when idle
+     */
+    public int idle(long idleMs) {
+        if (!enabled) {
+            return (int) idleMs;
+        }
+        if (!queue.isEmpty()) {
+            return 1;
+        }
+        return (int) Math.min(idleMs, ACTIVE_SLEEP_MS << emptyDrains);
+    }
+    
+    /**
+     * Take the script thread for the next step of an action (worker): the loop waits in
+     * drain() until releaseLease(). Only UNSYNCHRONIZED lets the step go ahead without it.
+     */
+    public LeaseResult acquireLease() {
+        if (lease.get() != null) {
+            return LeaseResult.REFUSED;
+        }
+        if (!enabled || !isAttached()) {
+            return LeaseResult.UNSYNCHRONIZED;
+        }
+        if (RequestContext.shouldAbort()) {
+            return LeaseResult.REFUSED;
+        }
+        Lease next = new Lease();
+        Command command = new Command(() -> {
+            next.hold();
+            return null;
+        });
+        queue.offer(command);
+        
+        RequestContext context = RequestContext.current();
+        try {
+            while (true) {
+                long wait = context != null ? Math.min(WAIT_SLICE_MILLIS, context.remainingMillis()) : WAIT_SLICE_MILLIS;
+                if (next.granted.await(Math.max(1, wait), TimeUnit.MILLISECONDS)) {
+                    lease.set(next);
+                    steps.incrementAndGet();
+                    return LeaseResult.GRANTED;
+                }
+                if (!isAttached() && command.claim()) {
+                    return LeaseResult.UNSYNCHRONIZED;
+                }
+                if (RequestContext.shouldAbort() && command.claim()) {
+                    return LeaseResult.REFUSED;
+                }
+            }
+        } catch (InterruptedException e) {
+            if (!command.claim()) {
+                // The script thread is already handing it over; give it straight back
+                next.awaitGrant();
+                next.released.countDown();
+            }
+            Thread.currentThread().interrupt();
+            return LeaseResult.REFUSED;
+        }
+    }
+    
+    /**
+     * Give the script thread back (worker). Returns false if this thread held no lease.
+     */
+    public boolean releaseLease() {
+        Lease held = lease.get();
+        if (held == null) {
+            return false;
+        }
+        lease.remove();
+        held.released.countDown();
+        return true;
+    }
+    
+    /**
+     * Evaluate a wait condition on a step of its own when the caller's lease is handed
+     * back for the wait (worker). A refused lease skips the check; the wait is ending anyway.
+     */
+    public boolean checkLeased(BooleanSupplier condition) {
+        LeaseResult result = acquireLease();
+        if (result == LeaseResult.REFUSED) {
+            return false;
+        }
+        boolean leased = result == LeaseResult.GRANTED;
+        try {
+            return condition.getAsBoolean();
+        } finally {
+            if (leased) {
+                releaseLease();
+            }
+        }
+    }
+    
+    /**
+     * Check if the caller is a command running on the script thread
+     */
+    public boolean isScriptThread() {
+        return Thread.currentThread() == drainer;
+    }
+    
+    public boolean isAttached() {
+        return System.nanoTime() - lastDrainNanos.get() < DETACHED_AFTER_NANOS;
+    }
+    
+    /**
+     * Queue depth and drain counters, for the shimStats method
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("attached", enabled && isAttached());
+        stats.put("depth", queue.size());
+        stats.put("executed", executed.get());
+        stats.put("inline", inline.get());
+        stats.put("drains", drains.get());
+        stats.put("overBudget", overBudget.get());
+        stats.put("actionSteps", steps.get());
+        stats.put("longSteps", longSteps.get());
+        stats.put("budgetMs", TimeUnit.NANOSECONDS.toMillis(budgetNanos));
+        stats.put("maxDrainMs", Math.round(maxDrainNanos / 1000.0) / 1000.0);
+        return stats;
+    }
+    
+    /**
+     * The script thread's side of an action step: granted when drain() reaches it, then
+     * held until the worker releases it or the drain's budget runs out, in which case it
+     * is queued again for the next drain
+     */
+    private final class Lease {
+        final CountDownLatch granted = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+        /** Script thread only: this step has already outlived one drain */
+        boolean overran;
+        
+        void hold() {
+            granted.countDown();
+            try {
+                if (released.await(Math.max(0, drainDeadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (!overran) {
+                overran = true;
+                longSteps.incrementAndGet();
+            }
+            queue.offer(new Command(() -> {
+                hold();
+                return null;
+            }));
+        }
+        
+        void awaitGrant() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    granted.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    private static final class Command {
+        final Supplier<Object> task;
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+        final AtomicBoolean claimed = new AtomicBoolean(false);
+        
+        Command(Supplier<Object> task) {
+            this.task = task;
+        }
+        
+        /**
+         * Either the script thread runs a command or its caller takes it back, never both
+         */
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+        
+        void run() {
+            try {
+                result.complete(task.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+}
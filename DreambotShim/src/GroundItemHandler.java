@@ -4,7 +4,6 @@ import org.dreambot.api.methods.Calculations;
 import org.dreambot.api.methods.map.Tile;
 import org.dreambot.api.methods.walking.impl.Walking;
 import org.dreambot.api.utilities.Timer;
-import org.dreambot.api.utilities.Sleep;
 import org.dreambot.api.utilities.Logger;
 import org.dreambot.api.methods.interactive.Players;
 
@@ -52,16 +51,22 @@ public class GroundItemHandler {
                 if (taskManager != null) {
                     taskManager.setCurrentStep("Walking to ground item: " + itemName);
                 }
+                Job.reportProgress("stage", "walking to item");
+                Job.reportProgress("distanceRemaining", distance);
                 
                 if (Walking.walk(itemTile)) {
                     Logger.log("Python->Java: Walking command sent, waiting to get closer...");
                     
                     // Wait for walking to complete or get within 1 tile
-                    boolean reachedItem = Sleep.sleepUntil(() -> {
+                    boolean reachedItem = RequestContext.sleepUntil(() -> {
                         if (Players.getLocal() == null) return true; // Safety check
                         return Players.getLocal().getTile().distance(itemTile) <= 1;
                     }, 10000); // 10 second timeout for walking
                     
+                    if (RequestContext.shouldAbort()) {
+                        return "Pickup of ground item cancelled: " + itemName;
+                    }
+                    
                     if (reachedItem) {
                         Logger.log("Python->Java: Successfully moved within range of ground item");
                     } else {
@@ -84,6 +89,7 @@ public class GroundItemHandler {
             if (taskManager != null) {
                 taskManager.setCurrentStep("Picking up ground item: " + itemName);
             }
+            Job.reportProgress("stage", "picking up item");
             
             // Try to pick up the item
             String[] actions = groundItem.getActions();
@@ -107,9 +113,9 @@ public class GroundItemHandler {
             if (groundItem.interact(pickupAction)) {
                 // Wait a moment for the action to process
                 Timer pickupTimer = new Timer(5000); // 5 seconds max wait
-                while (groundItem.exists() && !pickupTimer.finished()) {
+                while (groundItem.exists() && !pickupTimer.finished() && !RequestContext.shouldAbort()) {
                     try {
-                        Thread.sleep(100);
+                        RequestContext.sleep(100);
                     } catch (InterruptedException e) {
                         Thread.currentThread().interrupt();
                         return "Interrupted while picking up item: " + itemName;
@@ -166,11 +172,15 @@ public class GroundItemHandler {
                     Logger.log("Python->Java: Walking command sent, waiting to get closer...");
                     
                     // Wait for walking to complete or get within 1 tile
-                    boolean reachedItem = Sleep.sleepUntil(() -> {
+                    boolean reachedItem = RequestContext.sleepUntil(() -> {
                         if (Players.getLocal() == null) return true; // Safety check
                         return Players.getLocal().getTile().distance(itemTile) <= 1;
                     }, 10000); // 10 second timeout for walking
                     
+                    if (RequestContext.shouldAbort()) {
+                        return "Pickup of ground item cancelled, ID: " + itemId;
+                    }
+                    
                     if (reachedItem) {
                         Logger.log("Python->Java: Successfully moved within range of ground item");
                     } else {
@@ -216,9 +226,9 @@ public class GroundItemHandler {
             if (groundItem.interact(pickupAction)) {
                 // Wait a moment for the action to process
                 Timer pickupTimer = new Timer(5000); // 5 seconds max wait
-                while (groundItem.exists() && !pickupTimer.finished()) {
+                while (groundItem.exists() && !pickupTimer.finished() && !RequestContext.shouldAbort()) {
                     try {
-                        Thread.sleep(100);
+                        RequestContext.sleep(100);
                     } catch (InterruptedException e) {
                         Thread.currentThread().interrupt();
                         return "Interrupted while picking up item ID: " + itemId;
@@ -0,0 +1,178 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers recent results by client-chosen idempotency key, so a retried call
+ * returns the first call's result instead of running the action again.
+ * A retry that arrives while the first call is still running waits for it.
+ * Entries expire after a fixed time and the oldest are evicted past capacity.
+ * Calls that fail or are cut short by their deadline or a cancel are not kept; a retry
+ * waiting on a cut-short call runs it again rather than taking its partial result.
+ */
+public class IdempotencyCache {
+    
+    /**
+     * The work to run on the first call for a key
+     */
+    @FunctionalInterface
+    public interface Call {
+        Object run() throws Exception;
+    }
+    
+    /** Completes the entry of a call that stopped early, so its waiting retries run it themselves */
+    private static final Object CUT_SHORT = new Object();
+    
+    private final int capacity;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    
+    public IdempotencyCache(int capacity, long ttlMillis) {
+        this.capacity = capacity;
+        this.ttlMillis = ttlMillis;
+    }
+    
+    /**
+     * Run the call unless this key already has a result (or a call in progress) for
+     * the same method and arguments; reusing a key for a different call is an error.
+     * A retry whose first call was cut short runs the call itself.
+     */
+    public Object execute(String key, String method, Object[] args, Call call) throws Exception {
+        while (true) {
+            Entry entry;
+            boolean owner = false;
+            synchronized (this) {
+                evictExpired(System.currentTimeMillis());
+                entry = entries.get(key);
+                if (entry == null) {
+                    entry = new Entry(method, args);
+                    entries.put(key, entry);
+                    owner = true;
+                    if (entries.size() > capacity) {
+                        evictOldestCompleted();
+                    }
+                }
+            }
+            
+            if (!owner) {
+                if (!entry.matches(method, args)) {
+                    throw new IllegalArgumentException("Idempotency key '" + key + "' was already used for a different "
+                            + entry.method + " call");
+                }
+                Object result = await(entry);
+                if (result == CUT_SHORT) {
+                    // The entry is gone; take the key over, or wait on whoever did
+                    continue;
+                }
+                hits.incrementAndGet();
+                return result;
+            }
+            
+            misses.incrementAndGet();
+            try {
+                Object result = call.run();
+                if (wasCutShort()) {
+                    // An interrupted or timed-out action is not a result worth replaying
+                    synchronized (this) {
+                        entries.remove(key, entry);
+                    }
+                    entry.result.complete(CUT_SHORT);
+                } else {
+                    entry.result.complete(result);
+                }
+                return result;
+            } catch (Exception e) {
+                // Only successful results are kept; a failed call may be retried for real
+                synchronized (this) {
+                    entries.remove(key, entry);
+                }
+                entry.result.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+    
+    /**
+     * Entry count and hit/miss counters, for the shimStats method
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("capacity", capacity);
+        stats.put("ttlMs", ttlMillis);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        return stats;
+    }
+    
+    /**
+     * Check if the call just run stopped early: its deadline passed or the timeout reply
+     * went out, its job was cancelled, or its thread was interrupted
+     */
+    private static boolean wasCutShort() {
+        RequestContext context = RequestContext.current();
+        return RequestContext.shouldAbort() || (context != null && context.isReplied());
+    }
+    
+    /**
+     * Wait for the first call's result, no longer than the retry's own deadline
+     */
+    private static Object await(Entry entry) throws Exception {
+        try {
+            RequestContext context = RequestContext.current();
+            if (context != null) {
+                return entry.result.get(Math.max(1, context.remainingMillis()), TimeUnit.MILLISECONDS);
+            }
+            return entry.result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+    
+    private void evictExpired(long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (now - entry.createdMillis < ttlMillis) {
+                // Insertion order, so everything after this is younger
+                break;
+            }
+            if (entry.result.isDone()) {
+                iterator.remove();
+            }
+        }
+    }
+    
+    private void evictOldestCompleted() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext() && entries.size() > capacity) {
+            if (iterator.next().result.isDone()) {
+                iterator.remove();
+            }
+        }
+    }
+    
+    private static final class Entry {
+        final String method;
+        final Object[] args;
+        final long createdMillis = System.currentTimeMillis();
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+        
+        Entry(String method, Object[] args) {
+            this.method = method;
+            this.args = args;
+        }
+        
+        boolean matches(String otherMethod, Object[] otherArgs) {
+            return method.equals(otherMethod) && Arrays.deepEquals(args, otherArgs);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+/**
+ * Discovery file listing the shims running on this host and their endpoints
+ * (/tmp/dreambot_shim_instances.json, or the dreambot.shim.registry property).
+ * Every shim adds itself on start, publishes each endpoint once it is serving and
+ * removes itself on stop; entries whose process is gone are pruned, and the endpoint
+ * files they left behind deleted, on every update. Updates are serialized across
+ * processes with a lock on a sibling file.
+ */
+public final class InstanceRegistry {
+    
+    private static final String REGISTRY_PROPERTY = "dreambot.shim.registry";
+    private static final String DEFAULT_REGISTRY = "/tmp/dreambot_shim_instances.json";
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    
+    private InstanceRegistry() {
+    }
+    
+    /**
+     * One running shim
+     */
+    public static final class Entry {
+        String id;
+        long pid;
+        long startedAt;
+        Map<String, String> endpoints;
+        
+        public String getId() {
+            return id;
+        }
+        
+        public long getPid() {
+            return pid;
+        }
+        
+        public Map<String, String> getEndpoints() {
+            return endpoints;
+        }
+        
+        /**
+         * Check the recorded process still runs; a process that started after the entry
+         * was written has only reused its pid
+         */
+        boolean isAlive() {
+            return ProcessHandle.of(pid)
+                    .filter(ProcessHandle::isAlive)
+                    .map(process -> process.info().startInstant()
+                            .map(start -> start.toEpochMilli() <= startedAt)
+                            .orElse(true))
+                    .orElse(false);
+        }
+    }
+    
+    private static final class Contents {
+        List<Entry> instances = new ArrayList<>();
+    }
+    
+    /**
+     * Live instances, pruning any that have died
+     */
+    public static List<Entry> list() throws IOException {
+        List<Entry> live = new ArrayList<>();
+        update(live::addAll);
+        return live;
+    }
+    
+    /**
+     * The live entry with this id, or null
+     */
+    public static Entry find(String id) throws IOException {
+        for (Entry entry : list()) {
+            if (entry.id.equals(id)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Add this process as the given instance; throws IllegalStateException if another
+     * live process holds the id
+     */
+    public static void register(ShimInstance instance) throws IOException {
+        long pid = ProcessHandle.current().pid();
+        IllegalStateException[] conflict = new IllegalStateException[1];
+        update(instances -> {
+            for (Entry entry : instances) {
+                if (entry.id.equals(instance.getId()) && entry.pid != pid) {
+                    conflict[0] = new IllegalStateException("Shim instance '" + instance.getId()
+                            + "' is already running (pid " + entry.pid + ")");
+                    return;
+                }
+            }
+            instances.removeIf(entry -> entry.id.equals(instance.getId()));
+            Entry entry = new Entry();
+            entry.id = instance.getId();
+            entry.pid = pid;
+            entry.startedAt = System.currentTimeMillis();
+            entry.endpoints = new LinkedHashMap<>();
+            instances.add(entry);
+        });
+        if (conflict[0] != null) {
+            throw conflict[0];
+        }
+    }
+    
+    /**
+     * Add endpoints this process now serves to its entry for the instance
+     */
+    public static void publishEndpoints(ShimInstance instance, Map<String, String> endpoints) {
+        long pid = ProcessHandle.current().pid();
+        try {
+            update(instances -> {
+                for (Entry entry : instances) {
+                    if (entry.id.equals(instance.getId()) && entry.pid == pid) {
+                        if (entry.endpoints == null) {
+                            entry.endpoints = new LinkedHashMap<>();
+                        }
+                        entry.endpoints.putAll(endpoints);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Error publishing endpoints to registry: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Remove this process's entry for the instance
+     */
+    public static void unregister(ShimInstance instance) {
+        long pid = ProcessHandle.current().pid();
+        try {
+            update(instances -> instances.removeIf(entry -> entry.id.equals(instance.getId()) && entry.pid == pid));
+        } catch (IOException e) {
+            System.err.println("Error removing instance from registry: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Read the registry under the lock, drop dead entries, apply the change and write it back
+     */
+    private static void update(Consumer<List<Entry>> change) throws IOException {
+        Path registry = Paths.get(System.getProperty(REGISTRY_PROPERTY, DEFAULT_REGISTRY));
+        Path lockFile = Paths.get(registry + ".lock");
+        try (FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = lockChannel.lock()) {
+            List<Entry> instances = read(registry);
+            List<Entry> live = new ArrayList<>();
+            for (Entry entry : instances) {
+                if (entry.isAlive()) {
+                    live.add(entry);
+                } else {
+                    System.out.println("Pruning stale shim instance '" + entry.id + "' (pid " + entry.pid + ")");
+                    deleteEndpoints(entry);
+                }
+            }
+            change.accept(live);
+            Contents contents = new Contents();
+            contents.instances = live;
+            // Readers never see a half-written file
+            Path temp = Paths.get(registry + ".tmp");
+            Files.write(temp, gson.toJson(contents).getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, registry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+    
+    private static List<Entry> read(Path registry) throws IOException {
+        if (!Files.exists(registry)) {
+            return new ArrayList<>();
+        }
+        try {
+            Contents contents = gson.fromJson(new String(Files.readAllBytes(registry), StandardCharsets.UTF_8), Contents.class);
+            return contents != null && contents.instances != null ? contents.instances : new ArrayList<>();
+        } catch (JsonParseException e) {
+            System.err.println("Ignoring unreadable instance registry: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * Remove the pipes, socket and snapshot a crashed shim left behind
+     */
+    private static void deleteEndpoints(Entry entry) {
+        if (entry.endpoints == null) {
+            return;
+        }
+        for (String path : entry.endpoints.values()) {
+            try {
+                Files.deleteIfExists(Paths.get(path));
+            } catch (IOException e) {
+                System.err.println("Error removing stale endpoint " + path + ": " + e.getMessage());
+            }
+        }
+    }
+}
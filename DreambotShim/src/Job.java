@@ -0,0 +1,150 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A long-running action started asynchronously, with its own cancellation flag and progress
+ */
+public class Job {
+    
+    /**
+     * Lifecycle of a job
+     */
+    public enum Status {
+        RUNNING, SUCCEEDED, FAILED, CANCELLED
+    }
+    
+    private static final ThreadLocal<Job> CURRENT = new ThreadLocal<>();
+    private static final Gson gson = new Gson();
+    
+    private final String id;
+    private final String description;
+    private final long startTime = System.currentTimeMillis();
+    private final AtomicBoolean cancelRequested = new AtomicBoolean(false);
+    private final Map<String, Object> progress = new ConcurrentHashMap<>();
+    private final CompletableFuture<Object> completion = new CompletableFuture<>();
+    private volatile Status status = Status.RUNNING;
+    private volatile Object result;
+    private volatile String error;
+    private volatile long endTime;
+    
+    Job(String id, String description) {
+        this.id = id;
+        this.description = description;
+    }
+    
+    /**
+     * The job running on the current thread, or null outside a job
+     */
+    public static Job current() {
+        return CURRENT.get();
+    }
+    
+    /**
+     * Check if the job running on this thread has been asked to cancel
+     */
+    public static boolean isCancelRequested() {
+        Job job = CURRENT.get();
+        return job != null && job.cancelRequested.get();
+    }
+    
+    /**
+     * Record a progress value for the job running on this thread, and stream it to
+     * the client if the request on this thread asked for progress frames
+     */
+    public static void reportProgress(String key, Object value) {
+        if (key == null || value == null) {
+            return;
+        }
+        Job job = CURRENT.get();
+        if (job != null) {
+            job.progress.put(key, value);
+        }
+        ProgressStream.report(key, value);
+    }
+    
+    /**
+     * Run the body as this job on the calling thread
+     */
+    void run(JobManager.JobBody body) {
+        CURRENT.set(this);
+        try {
+            Object value = body.run();
+            result = value;
+            finish(cancelRequested.get() ? Status.CANCELLED : Status.SUCCEEDED);
+        } catch (Exception e) {
+            error = e.getMessage() != null ? e.getMessage() : e.toString();
+            finish(cancelRequested.get() ? Status.CANCELLED : Status.FAILED);
+        } finally {
+            CURRENT.remove();
+            completion.complete(result);
+        }
+    }
+    
+    /**
+     * Stamp the end time before publishing the terminal status, so a job never looks
+     * done with no end time (JobManager would purge it at once)
+     */
+    private void finish(Status terminal) {
+        endTime = System.currentTimeMillis();
+        status = terminal;
+    }
+    
+    /**
+     * Ask the job to stop at its next cancellation check
+     */
+    public boolean cancel() {
+        if (isDone()) {
+            return false;
+        }
+        cancelRequested.set(true);
+        return true;
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public String getDescription() {
+        return description;
+    }
+    
+    public Status getStatus() {
+        return status;
+    }
+    
+    public boolean isDone() {
+        return status != Status.RUNNING;
+    }
+    
+    public long getEndTime() {
+        return endTime;
+    }
+    
+    CompletableFuture<Object> getCompletion() {
+        return completion;
+    }
+    
+    /**
+     * Status, progress and outcome as a JSON string for the Python side
+     */
+    public String toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("id", id);
+        json.addProperty("description", description);
+        json.addProperty("status", status.name());
+        json.addProperty("cancelRequested", cancelRequested.get());
+        json.addProperty("elapsedMs", (isDone() ? endTime : System.currentTimeMillis()) - startTime);
+        json.add("progress", gson.toJsonTree(progress));
+        if (result != null) {
+            json.addProperty("result", String.valueOf(result));
+        }
+        if (error != null) {
+            json.addProperty("error", error);
+        }
+        return gson.toJson(json);
+    }
+}
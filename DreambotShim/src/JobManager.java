@@ -0,0 +1,108 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs long actions as asynchronous jobs that can be polled, awaited and cancelled by id
+ */
+public class JobManager {
+    
+    /**
+     * Body of a job; may block for as long as the action takes
+     */
+    @FunctionalInterface
+    public interface JobBody {
+        Object run() throws Exception;
+    }
+    
+    /** Finished jobs are kept this long so late status calls still find them */
+    private static final long FINISHED_RETENTION_MS = TimeUnit.MINUTES.toMillis(10);
+    
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final ExecutorService executor;
+    
+    public JobManager() {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "shim-job-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Start a job and return it immediately
+     */
+    public Job submit(String description, JobBody body) {
+        purgeFinished();
+        Job job = new Job("job-" + nextId.incrementAndGet(), description);
+        jobs.put(job.getId(), job);
+        executor.execute(() -> {
+            // Like a synchronous action, the job runs its steps on the script thread's lease
+            GameThreadExecutor gameThread = PipeManager.getGameThreadExecutor();
+            boolean refused = gameThread.acquireLease() == GameThreadExecutor.LeaseResult.REFUSED;
+            try {
+                job.run(refused ? () -> "Error: Job '" + job.getId() + "' could not take the game thread" : body);
+            } finally {
+                gameThread.releaseLease();
+            }
+            // The job's action is over, so cached query results may be stale
+            PipeManager.getQueryCache().invalidate();
+        });
+        return job;
+    }
+    
+    /**
+     * Look up a job by id, or null if unknown or expired
+     */
+    public Job get(String jobId) {
+        return jobs.get(jobId);
+    }
+    
+    /**
+     * Wait up to timeoutMs for a job to finish; returns the job either way
+     */
+    public Job await(String jobId, long timeoutMs) throws InterruptedException {
+        Job job = jobs.get(jobId);
+        if (job == null) {
+            return null;
+        }
+        try {
+            job.getCompletion().get(Math.max(0, timeoutMs), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Still running; caller reports the current status
+        } catch (java.util.concurrent.ExecutionException e) {
+            // Job.run never completes exceptionally
+        }
+        return job;
+    }
+    
+    /**
+     * Request cancellation of a job
+     */
+    public boolean cancel(String jobId) {
+        Job job = jobs.get(jobId);
+        return job != null && job.cancel();
+    }
+    
+    /**
+     * Cancel all running jobs and stop the worker threads
+     */
+    public void shutdown() {
+        for (Job job : jobs.values()) {
+            job.cancel();
+        }
+        executor.shutdownNow();
+    }
+    
+    private void purgeFinished() {
+        long cutoff = System.currentTimeMillis() - FINISHED_RETENTION_MS;
+        jobs.values().removeIf(job -> job.isDone() && job.getEndTime() < cutoff);
+    }
+}
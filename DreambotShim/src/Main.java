@@ -1,9 +1,11 @@
 import org.dreambot.api.script.AbstractScript;
 import org.dreambot.api.script.Category;
 import org.dreambot.api.script.ScriptManifest;
+import org.dreambot.api.script.listener.GameTickListener;
 import org.dreambot.api.utilities.Logger;
 import org.dreambot.api.input.Mouse;
 import java.awt.*;
+import java.util.Map;
 
 @ScriptManifest(name = "DreamBot Named Pipe Shim", description = "Named pipe receiver for Python-to-Java method calls",
         author = "DreamBotShim", version = 1.0, category = Category.UTILITY, image = "")
@@ -12,12 +14,32 @@ import java.awt.*;
  * DreamBot Script - Named Pipe Receiver for dynamic Java method calls from Python
  * Coordinated refactored version using separate component classes
  */
-public class Main extends AbstractScript {
+public class Main extends AbstractScript implements GameTickListener {
     
     // Component instances
     private TaskManager taskManager;
     private DreamBotAPIWrapper apiWrapper;
     private UIRenderer uiRenderer;
+    private WorldStateSnapshot worldStateSnapshot;
+    /** Game ticks seen since the script started; written by the client on each tick */
+    private volatile long gameTick;
+    /** Last tick the world state was published for (script thread) */
+    private long publishedTick = -1;
+    private WorldState lastWorldState;
+    private String instanceId;
+    
+    /** Longest the loop sleeps between passes when no pipe calls have come in for a while */
+    private static final long IDLE_SLEEP_MS = 100;
+    
+    /**
+     * Quickstart parameters: the first one names this shim's instance (e.g. the account
+     * or profile name), giving it its own pipes when several clients share the host
+     */
+    @Override
+    public void onStart(String... params) {
+        instanceId = params.length > 0 ? params[0] : null;
+        onStart();
+    }
     
     @Override
     public void onStart() {
@@ -29,32 +51,59 @@ public class Main extends AbstractScript {
         apiWrapper = new DreamBotAPIWrapper(taskManager);
         
         // Initialize the pipe manager with API wrapper
-        if (!PipeManager.initialize(apiWrapper)) {
+        if (!PipeManager.initialize(apiWrapper, instanceId)) {
             Logger.log("ERROR: Failed to initialize pipe manager!");
             PipeManager.stop();
             stop(); // Call the AbstractScript stop method
             return;
         }
         
+        // Publish player state to a memory-mapped file every game tick for RPC-free polling
+        worldStateSnapshot = new WorldStateSnapshot(PipeManager.getInstance().getStatePath());
+        try {
+            worldStateSnapshot.open();
+            InstanceRegistry.publishEndpoints(PipeManager.getInstance(), Map.of("state", worldStateSnapshot.getPath()));
+        } catch (Exception e) {
+            Logger.log("WARNING: World state snapshot unavailable: " + e.getMessage());
+            worldStateSnapshot = null;
+        }
+        
         // Initialize UI renderer after PipeManager is ready
         uiRenderer = new UIRenderer(taskManager);
         
         Logger.log("All components initialized successfully");
-        Logger.log("Python scripts can now send method calls to: " + PipeManager.getPipeName());
+        Logger.log("Python scripts can now send method calls to: " + PipeManager.getEndpoints());
         Logger.log("Available methods: helloWorld, greet, calculate, walkToLocation, clickObject, etc.");
     }
     
     @Override
     public int onLoop() {
         // The named pipe receiver runs in its own background thread
-        // This loop just keeps the script alive and can be used for additional logic
+        // This loop runs the queries it hands over and keeps the script alive
         
         // Handle mouse clicks for the skip button
         handleMouseClicks();
         
-        // You can add any periodic tasks here
-        // For now, just sleep and let the named pipe receiver handle calls
-        return 100; // Shorter sleep for more responsive UI
+        // Publish the state snapshot and events once per game tick, not once per loop pass
+        long tick = gameTick;
+        if (tick != publishedTick) {
+            publishedTick = tick;
+            publishWorldState(tick);
+        }
+        
+        // Run the queries pipe clients queued for this thread; DreamBot sleeps for what idle() returns
+        GameThreadExecutor gameThread = PipeManager.getGameThreadExecutor();
+        gameThread.drain();
+        return gameThread.idle(IDLE_SLEEP_MS);
+    }
+    
+    /**
+     * Tick-scoped query results expire here, once per game tick
+     */
+    @Override
+    public void onGameTick() {
+        long tick = ++gameTick;
+        PipeManager.getQueryCache().onTick(tick);
     }
     
     @Override
@@ -63,6 +112,9 @@ public class Main extends AbstractScript {
         Logger.log("Shutting down pipe manager...");
         
         PipeManager.stop(); // Stop the pipe manager
+        if (worldStateSnapshot != null) {
+            worldStateSnapshot.close();
+        }
         
         Logger.log("Pipe manager stopped");
         Logger.log("DreamBot Named Pipe Shim exited");
@@ -75,6 +127,25 @@ public class Main extends AbstractScript {
         }
     }
     
+    // Capture the world state once, write it to the snapshot file and push change events
+    private void publishWorldState(long tick) {
+        EventPublisher eventPublisher = PipeManager.getEventPublisher();
+        if (worldStateSnapshot == null && !eventPublisher.hasSubscribers()) {
+            lastWorldState = null;
+            return;
+        }
+        try {
+            WorldState state = WorldState.capture(tick, taskManager);
+            if (worldStateSnapshot != null) {
+                worldStateSnapshot.publish(state);
+            }
+            eventPublisher.publish(lastWorldState, state);
+            lastWorldState = state;
+        } catch (Exception e) {
+            Logger.log("Error publishing world state: " + e.getMessage());
+        }
+    }
+    
     // Handle mouse clicks for skip button
     private void handleMouseClicks() {
         if (uiRenderer != null && apiWrapper != null) {
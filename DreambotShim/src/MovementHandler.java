@@ -1,5 +1,4 @@
 import org.dreambot.api.utilities.Logger;
-import org.dreambot.api.utilities.Sleep;
 import org.dreambot.api.methods.interactive.Players;
 import org.dreambot.api.methods.map.Tile;
 import org.dreambot.api.methods.walking.impl.Walking;
@@ -10,11 +9,12 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class MovementHandler {
     
-    private static final AtomicBoolean skipRequested = new AtomicBoolean(false);
-    private TaskManager taskManager;
+    private final TaskManager taskManager;
+    private final AtomicBoolean skipRequested;
     
-    public MovementHandler(TaskManager taskManager) {
+    public MovementHandler(TaskManager taskManager, AtomicBoolean skipRequested) {
         this.taskManager = taskManager;
+        this.skipRequested = skipRequested;
     }
     
     /**
@@ -31,7 +31,7 @@ public class MovementHandler {
             Tile target = new Tile(x, y, z);
             Logger.log("DEBUG: Created Tile object with coordinates (" + target.getX() + ", " + target.getY() + ", " + target.getZ() + ")");
             Logger.log("Python->Java: Walking to location (" + x + ", " + y + ", " + z + ") - Will not return until arrived or skipped");
-
+            
             // Check if already at the target (within 3 tiles AND on same plane)
             if (Players.getLocal() != null) {
                 Tile currentTile = Players.getLocal().getTile();
@@ -45,10 +45,9 @@ public class MovementHandler {
             int attempts = 0;
             
             while (true) { // Unlimited attempts until we arrive or skip
-                // Check for skip request
-                if (skipRequested.get()) {
+                // Check for skip request or job cancellation
+                if (consumeStopRequest()) {
                     Logger.log("Python->Java: Skip requested, canceling walk");
-                    skipRequested.set(false);
                     taskManager.setCurrentStep("Idle - Waiting for commands");
                     return "Walking to (" + x + ", " + y + ") - SKIPPED";
                 }
@@ -58,7 +57,7 @@ public class MovementHandler {
                 if (Players.getLocal() == null) {
                     Logger.log("Python->Java: Player is null, waiting before retry...");
                     try {
-                        Thread.sleep(2000); // Wait longer if player is null
+                        RequestContext.sleep(2000); // Wait longer if player is null
                     } catch (InterruptedException ie) {
                         Thread.currentThread().interrupt();
                         taskManager.setCurrentStep("Idle - Waiting for commands");
@@ -72,6 +71,9 @@ public class MovementHandler {
                 
                 Logger.log("Python->Java: Distance to target: " + String.format("%.1f", currentDistance) + " tiles (attempt " + attempts + ")");
                 taskManager.setCurrentStep("Walking to (" + x + ", " + y + ") - " + String.format("%.1f", currentDistance) + " tiles away");
+                Job.reportProgress("attempts", attempts);
+                Job.reportProgress("distanceRemaining", Math.round(currentDistance * 10) / 10.0);
+                reportTile(currentTile);
                 
                 // Check if we're within 3 tiles of the target AND on same plane - SUCCESS EXIT
                 if (currentDistance <= 3 && currentTile.getZ() == target.getZ()) {
@@ -87,9 +89,9 @@ public class MovementHandler {
                 if (walkInitiated) {
                     // Wait for the player to start moving, reach destination, or stop moving
                     Logger.log("Python->Java: Walk command sent, waiting for movement...");
-                    boolean walkCompleted = Sleep.sleepUntil(() -> {
+                    boolean walkCompleted = RequestContext.sleepUntil(() -> {
                         // Check for skip request during movement
-                        if (skipRequested.get()) {
+                        if (isStopRequested()) {
                             Logger.log("Python->Java: Skip requested during movement");
                             return true;
                         }
@@ -98,6 +100,8 @@ public class MovementHandler {
                         
                         Tile newTile = Players.getLocal().getTile();
                         double newDistance = newTile.distance(target);
+                        Job.reportProgress("distanceRemaining", Math.round(newDistance * 10) / 10.0);
+                        reportTile(newTile);
                         
                         // Check if we've arrived (within 3 tiles AND on same plane)
                         if (newDistance <= 3 && newTile.getZ() == target.getZ()) {
@@ -115,9 +119,8 @@ public class MovementHandler {
                     }, 10000); // Wait up to 10 seconds for each walk attempt
                     
                     // Check for skip after movement wait
-                    if (skipRequested.get()) {
+                    if (consumeStopRequest()) {
                         Logger.log("Python->Java: Skip requested, canceling walk");
-                        skipRequested.set(false);
                         taskManager.setCurrentStep("Idle - Waiting for commands");
                         return "Walking to (" + x + ", " + y + ") - SKIPPED";
                     }
@@ -147,7 +150,7 @@ public class MovementHandler {
                 
                 // Small delay between attempts to prevent spam
                 try {
-                    Thread.sleep(1500); // 1.5 second delay between attempts
+                    RequestContext.sleep(1500); // 1.5 second delay between attempts
                 } catch (InterruptedException ie) {
                     Thread.currentThread().interrupt();
                     taskManager.setCurrentStep("Idle - Waiting for commands");
@@ -171,6 +174,31 @@ public class MovementHandler {
         }
     }
     
+    /**
+     * Report the player's current tile as walk progress
+     */
+    private static void reportTile(Tile tile) {
+        Job.reportProgress("x", tile.getX());
+        Job.reportProgress("y", tile.getY());
+        Job.reportProgress("z", tile.getZ());
+    }
+    
+    /**
+     * Check for a global skip, cancellation of the job running this walk or an expired
+     * request deadline, without clearing anything
+     */
+    private boolean isStopRequested() {
+        return skipRequested.get() || RequestContext.shouldAbort();
+    }
+    
+    /**
+     * Check for a stop request and clear the global skip flag if it was set
+     */
+    private boolean consumeStopRequest() {
+        boolean skipped = skipRequested.getAndSet(false);
+        return skipped || RequestContext.shouldAbort();
+    }
+    
     /**
      * Request to skip the current operation
      */
@@ -1,39 +1,98 @@
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import com.google.gson.Gson;
-import com.google.gson.JsonObject;
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 
 /**
- * Named Pipe Shim for dynamic Python method calls
- * Creates a named pipe to communicate with Python scripts
+ * Java client for the shim's FIFO pair.
+ * Opens a session with the "hello" handshake, then speaks JSON lines or binary frames.
+ * Requests get ids and are pipelined up to the server's in-flight window; a reader
+ * thread completes each request's future when its reply arrives. The main method is
+ * a load generator for benchmarking the shim without the Python stack.
  */
 public class NamedPipeShim {
     
-    private static final String PIPE_NAME = "/tmp/dreambot_shim_pipe";
-    private static final String PYTHON_SCRIPT_PATH = "python_handler.py";
+    private static final String HELLO_METHOD = "hello";
+    private static final long DEFAULT_TIMEOUT_MS = 30000;
     private static final Gson gson = new Gson();
-    private static Process pythonProcess;
-    private static PrintWriter pipeWriter;
+    private static final String[] POLLING_METHODS = {"getPlayerX", "getPlayerY", "isPlayerMoving", "getInventoryCount"};
+    private static final Map<String, CompletableFuture<RpcResponse>> pending = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextId = new AtomicInteger(1);
+    private static DataOutputStream pipeWriter;
+    private static DataInputStream responseReader;
+    private static Thread readerThread;
+    private static Semaphore window;
+    private static volatile boolean binary;
+    private static List<String> methodTable = Collections.emptyList();
+    private static ShimInstance instance = new ShimInstance(ShimInstance.DEFAULT_ID);
     
     /**
-     * Initialize the named pipe and start the Python handler
+     * Open a JSON lines session with the shim
      */
     public static boolean initialize() {
+        return initialize(false);
+    }
+    
+    /**
+     * Open a session with the shim, asking for binary frames if preferBinary is set
+     */
+    public static boolean initialize(boolean preferBinary) {
+        return initialize(System.getProperty(ShimInstance.INSTANCE_PROPERTY), preferBinary);
+    }
+    
+    /**
+     * Open a session with the shim instance of that id; with a null id, connect to the
+     * only shim in the instance registry, or to the default instance
+     */
+    public static boolean initialize(String instanceId, boolean preferBinary) {
         try {
-            // Create named pipe if it doesn't exist
-            createNamedPipe();
+            instance = resolveInstance(instanceId);
+            // Opening the request pipe blocks until the shim is reading it
+            pipeWriter = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(instance.getPipeName())));
             
-            // Start Python handler process
-            startPythonHandler();
+            // The shim opens the response pipe on its first reply, so send the hello first
+            String helloId = String.valueOf(nextId.getAndIncrement());
+            writeJsonRequest(helloId, HELLO_METHOD, 0, preferBinary
+                    ? new Object[]{BinaryCodec.FORMAT_NAME, "json"} : new Object[]{"json"});
+            responseReader = new DataInputStream(new BufferedInputStream(new FileInputStream(instance.getResponsePipeName())));
             
-            // Open pipe for writing
-            pipeWriter = new PrintWriter(new FileWriter(PIPE_NAME), true);
+            RpcResponse reply = readHelloReply(helloId);
+            if (reply.getError() != null) {
+                throw new IOException("Handshake failed: " + reply.getError());
+            }
+            JsonObject hello = gson.fromJson(String.valueOf(reply.getResult()), JsonObject.class);
+            List<String> methods = new ArrayList<>();
+            for (JsonElement method : hello.getAsJsonArray("methods")) {
+                methods.add(method.getAsString());
+            }
+            methodTable = methods;
+            window = new Semaphore(hello.has("maxInFlight") ? hello.get("maxInFlight").getAsInt() : 1);
+            binary = BinaryCodec.FORMAT_NAME.equals(hello.get("format").getAsString());
+            
+            readerThread = new Thread(NamedPipeShim::readLoop, "shim-client-reader");
+            readerThread.setDaemon(true);
+            readerThread.start();
             
-            System.out.println("NamedPipeShim initialized successfully");
+            System.out.println("NamedPipeShim connected using " + (binary ? "binary frames" : "JSON lines")
+                    + " to instance " + instance + " (" + methodTable.size() + " methods, window "
+                    + window.availablePermits() + ")");
             return true;
             
         } catch (Exception e) {
@@ -43,108 +102,249 @@ public class NamedPipeShim {
         }
     }
     
+    private static ShimInstance resolveInstance(String instanceId) {
+        if (instanceId != null) {
+            return new ShimInstance(instanceId);
+        }
+        try {
+            List<InstanceRegistry.Entry> running = InstanceRegistry.list();
+            if (running.size() == 1) {
+                return new ShimInstance(running.get(0).getId());
+            }
+            if (running.size() > 1) {
+                System.out.println(running.size() + " shims are running, connecting to the default instance"
+                        + " (set " + ShimInstance.INSTANCE_PROPERTY + " to pick another)");
+            }
+        } catch (IOException e) {
+            System.err.println("Instance registry unavailable: " + e.getMessage());
+        }
+        return new ShimInstance(ShimInstance.DEFAULT_ID);
+    }
+    
     /**
-     * Create the named pipe using mkfifo command
+     * Send a request and return a future for its reply. Blocks while the in-flight
+     * window is full; the future fails with a TimeoutException after timeoutMs.
      */
-    private static void createNamedPipe() throws IOException, InterruptedException {
-        if (!Files.exists(Paths.get(PIPE_NAME))) {
-            Process mkfifoProcess = Runtime.getRuntime().exec("mkfifo " + PIPE_NAME);
-            int exitCode = mkfifoProcess.waitFor();
-            if (exitCode != 0) {
-                throw new IOException("Failed to create named pipe with mkfifo");
+    public static CompletableFuture<RpcResponse> callAsync(String methodName, long timeoutMs, Object... args) {
+        if (pipeWriter == null) {
+            return CompletableFuture.failedFuture(new IOException("NamedPipeShim is not initialized"));
+        }
+        try {
+            window.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        String id = String.valueOf(nextId.getAndIncrement());
+        CompletableFuture<RpcResponse> future = new CompletableFuture<>();
+        pending.put(id, future);
+        future.whenComplete((response, error) -> {
+            if (pending.remove(id) != null) {
+                window.release();
             }
-            System.out.println("Created named pipe: " + PIPE_NAME);
-        } else {
-            System.out.println("Named pipe already exists: " + PIPE_NAME);
+        });
+        try {
+            if (binary) {
+                int ordinal = methodTable.indexOf(methodName);
+                if (ordinal < 0) {
+                    throw new IOException("Method '" + methodName + "' is not in the shim's method table");
+                }
+                writeBytes(BinaryCodec.encodeCall(Integer.parseInt(id), ordinal, (int) timeoutMs, args));
+            } else {
+                writeJsonRequest(id, methodName, timeoutMs, args);
+            }
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            return future;
         }
+        // Give the shim's own deadline a moment to answer before timing out locally
+        return future.orTimeout(timeoutMs > 0 ? timeoutMs + 1000 : DEFAULT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Call a method and wait for its reply; returns the result, or an "Error: ..." string
+     */
+    public static Object callMethodWithResponse(String methodName, Object... args) {
+        try {
+            RpcResponse response = callAsync(methodName, 0, args).get();
+            return response.getError() != null ? "Error: " + response.getError() : response.getResult();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TimeoutException) {
+                return "Error: No reply to " + methodName + " within " + DEFAULT_TIMEOUT_MS + " ms";
+            }
+            return "Error: " + cause.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Error: Interrupted waiting for " + methodName;
+        }
+    }
+    
+    /**
+     * Check whether the session negotiated binary frames
+     */
+    public static boolean isBinary() {
+        return binary;
     }
     
     /**
-     * Start the Python handler process
+     * Number of requests sent whose replies have not arrived yet
      */
-    private static void startPythonHandler() throws IOException {
-        String pythonScriptFullPath = System.getProperty("user.dir") + "/DreambotShim/src/" + PYTHON_SCRIPT_PATH;
-        ProcessBuilder pb = new ProcessBuilder("python3", pythonScriptFullPath);
-        pb.directory(new File(System.getProperty("user.dir") + "/DreambotShim/src/"));
-        pythonProcess = pb.start();
+    public static int getPendingCount() {
+        return pending.size();
+    }
+    
+    private static void writeJsonRequest(String id, String methodName, long timeoutMs, Object... args) throws IOException {
+        JsonObject request = new JsonObject();
+        request.addProperty("id", id);
+        request.addProperty("method", methodName);
         
-        System.out.println("Started Python handler process");
+        JsonArray argsArray = new JsonArray();
+        for (Object arg : args) {
+            if (arg instanceof String) {
+                argsArray.add(new JsonPrimitive((String) arg));
+            } else if (arg instanceof Number) {
+                argsArray.add(new JsonPrimitive((Number) arg));
+            } else if (arg instanceof Boolean) {
+                argsArray.add(new JsonPrimitive((Boolean) arg));
+            } else {
+                argsArray.add(new JsonPrimitive(arg.toString()));
+            }
+        }
+        request.add("args", argsArray);
+        if (timeoutMs > 0) {
+            request.addProperty("timeoutMs", timeoutMs);
+        }
+        
+        writeBytes((gson.toJson(request) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static void writeBytes(byte[] bytes) throws IOException {
+        synchronized (pipeWriter) {
+            pipeWriter.write(bytes);
+            pipeWriter.flush();
+        }
     }
     
     /**
-     * Call a Python method with no arguments
+     * Read the hello reply on the calling thread, before the reader thread starts
      */
-    public static String callMethod(String methodName) {
-        return callMethod(methodName, new Object[0]);
+    private static RpcResponse readHelloReply(String helloId) throws IOException {
+        while (true) {
+            RpcResponse response = parseJsonReply(readLine());
+            if (response != null && helloId.equals(response.getId())) {
+                return response;
+            }
+        }
     }
     
     /**
-     * Call a Python method with arguments
+     * Complete pending futures as replies arrive; fails them all when the pipe closes
      */
-    public static String callMethod(String methodName, Object... args) {
+    private static void readLoop() {
         try {
-            JsonObject request = new JsonObject();
-            request.addProperty("method", methodName);
-            
-            JsonArray argsArray = new JsonArray();
-            for (Object arg : args) {
-                if (arg instanceof String) {
-                    argsArray.add(new JsonPrimitive((String) arg));
-                } else if (arg instanceof Number) {
-                    argsArray.add(new JsonPrimitive((Number) arg));
-                } else if (arg instanceof Boolean) {
-                    argsArray.add(new JsonPrimitive((Boolean) arg));
-                } else {
-                    argsArray.add(new JsonPrimitive(arg.toString()));
+            while (true) {
+                RpcResponse response = binary ? readFrame() : parseJsonReply(readLine());
+                if (response == null) {
+                    // An event, or a reply without an id
+                    continue;
+                }
+                CompletableFuture<RpcResponse> future = pending.get(response.getId());
+                if (future != null) {
+                    future.complete(response);
                 }
             }
-            request.add("args", argsArray);
-            
-            String jsonRequest = gson.toJson(request);
-            
-            // Write to named pipe
-            if (pipeWriter != null) {
-                pipeWriter.println(jsonRequest);
-                pipeWriter.flush();
-                
-                System.out.println("Sent request: " + jsonRequest);
-                return "Request sent successfully";
-            } else {
-                return "Error: Pipe writer not initialized";
+        } catch (IOException e) {
+            IOException closed = new IOException("Response pipe closed: " + e.getMessage());
+            for (CompletableFuture<RpcResponse> future : pending.values()) {
+                future.completeExceptionally(closed);
             }
-            
-        } catch (Exception e) {
-            System.err.println("Error calling method " + methodName + ": " + e.getMessage());
-            return "Error: " + e.getMessage();
         }
     }
     
+    private static RpcResponse readFrame() throws IOException {
+        int length = responseReader.readInt();
+        if (length <= 0 || length > BinaryCodec.MAX_FRAME_BYTES) {
+            throw new IOException("Bad frame length " + length);
+        }
+        byte[] frame = new byte[length];
+        responseReader.readFully(frame);
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        if (BinaryCodec.frameType(buffer) != BinaryCodec.FRAME_RESPONSE) {
+            return null;
+        }
+        return BinaryCodec.decodeResponse(buffer);
+    }
+    
+    private static String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = responseReader.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        if (b == -1) {
+            throw new EOFException("End of stream");
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+    
     /**
-     * Call a Python method and wait for response (if response mechanism is implemented)
+     * Turn a reply line into a response, or null for events, progress frames and
+     * replies without an id
      */
-    public static String callMethodWithResponse(String methodName, Object... args) {
-        // For now, this is the same as callMethod
-        // Can be extended to implement a response mechanism using a second pipe
-        return callMethod(methodName, args);
+    private static RpcResponse parseJsonReply(String line) {
+        JsonObject reply = gson.fromJson(line, JsonObject.class);
+        if (reply == null || !reply.has("id") || !reply.has("status")) {
+            return null;
+        }
+        String id = reply.get("id").getAsString();
+        String method = reply.has("method") ? reply.get("method").getAsString() : null;
+        String status = reply.get("status").getAsString();
+        if (RpcResponse.STATUS_PROGRESS.equals(status)) {
+            return null;
+        }
+        if (RpcResponse.STATUS_OK.equals(status)) {
+            return RpcResponse.ok(id, method, toValue(reply.get("result")));
+        }
+        String error = reply.has("error") ? reply.get("error").getAsString() : status;
+        return RpcResponse.failure(id, method, status, error);
+    }
+    
+    private static Object toValue(JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            return null;
+        }
+        if (!element.isJsonPrimitive()) {
+            return element.toString();
+        }
+        JsonPrimitive primitive = element.getAsJsonPrimitive();
+        if (primitive.isBoolean()) {
+            return primitive.getAsBoolean();
+        }
+        if (primitive.isNumber()) {
+            return primitive.getAsNumber();
+        }
+        return primitive.getAsString();
     }
     
     /**
-     * Cleanup resources
+     * Close the session; the shim ends it when the request pipe closes
      */
     public static void cleanup() {
         try {
             if (pipeWriter != null) {
                 pipeWriter.close();
+                pipeWriter = null;
             }
-            
-            if (pythonProcess != null && pythonProcess.isAlive()) {
-                pythonProcess.destroyForcibly();
-                pythonProcess.waitFor(5, TimeUnit.SECONDS);
+            if (responseReader != null) {
+                responseReader.close();
+                responseReader = null;
             }
-            
-            // Remove named pipe
-            Files.deleteIfExists(Paths.get(PIPE_NAME));
-            
+            if (readerThread != null) {
+                readerThread.join(1000);
+                readerThread = null;
+            }
+            binary = false;
             System.out.println("NamedPipeShim cleanup completed");
             
         } catch (Exception e) {
@@ -153,45 +353,74 @@ public class NamedPipeShim {
     }
     
     /**
-     * Example usage and testing
+     * Drive a polling mix against a running shim, keeping the in-flight window full,
+     * and print throughput, latency percentiles and reply statuses.
+     * Usage: java NamedPipeShim [json|binary] [seconds] [threads] [instance]
      */
-    public static void main(String[] args) {
-        // Initialize the shim
-        if (!initialize()) {
+    public static void main(String[] args) throws InterruptedException {
+        boolean preferBinary = args.length > 0 && args[0].equalsIgnoreCase(BinaryCodec.FORMAT_NAME);
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 10;
+        int threadCount = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        String instanceId = args.length > 3 ? args[3] : System.getProperty(ShimInstance.INSTANCE_PROPERTY);
+        if (!initialize(instanceId, preferBinary)) {
             System.err.println("Failed to initialize, exiting...");
             return;
         }
         
-        // Wait a moment for Python process to start
-        try {
-            Thread.sleep(2000);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+        // Each thread blocks on the window, so together they keep it full
+        LoadStats stats = new LoadStats();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            Thread thread = new Thread(() -> {
+                int i = 0;
+                while (System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    callAsync(POLLING_METHODS[i++ % POLLING_METHODS.length], 5000)
+                            .whenComplete((response, error) -> stats.record(System.nanoTime() - start,
+                                    error != null ? error.getClass().getSimpleName() : response.getStatus()));
+                }
+            }, "shim-load-" + t);
+            threads.add(thread);
+            thread.start();
         }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        while (getPendingCount() > 0) {
+            Thread.sleep(10);
+        }
+        stats.print(binary ? "binary" : "json", seconds);
+        cleanup();
+    }
+    
+    /**
+     * Latency samples and status counts collected by the load generator
+     */
+    private static final class LoadStats {
+        private final List<Long> latencies = new ArrayList<>();
+        private final Map<String, Integer> statuses = new TreeMap<>();
         
-        // Example method calls
-        System.out.println("=== Testing Named Pipe Shim ===");
-        
-        // Test simple method call
-        callMethod("hello_world");
-        
-        // Test method with string argument
-        callMethod("greet", "Alice");
-        
-        // Test method with multiple arguments
-        callMethod("calculate", 10, 5, "add");
-        
-        // Test method with mixed argument types
-        callMethod("process_data", "test_file.txt", 100, true);
+        synchronized void record(long latencyNanos, String status) {
+            latencies.add(latencyNanos);
+            statuses.merge(status, 1, Integer::sum);
+        }
         
-        // Wait for processing
-        try {
-            Thread.sleep(3000);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+        synchronized void print(String format, long seconds) {
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            if (sorted.length == 0) {
+                System.out.println(format + ": no replies");
+                return;
+            }
+            System.out.printf("%s: %d calls, %.0f calls/s, p50 %.0f us, p99 %.0f us, max %.0f us, %s%n",
+                    format, sorted.length, sorted.length / (double) seconds,
+                    percentile(sorted, 0.50) / 1000.0, percentile(sorted, 0.99) / 1000.0,
+                    sorted[sorted.length - 1] / 1000.0, statuses);
         }
         
-        // Cleanup
-        cleanup();
+        private static long percentile(long[] sorted, double fraction) {
+            return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+        }
     }
 }
@@ -1,37 +1,134 @@
-import java.io.*;
-import java.nio.file.Files;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import java.lang.reflect.Method;
 
 /**
- * Manages named pipe communication for receiving method calls from Python
+ * Manages named pipe communication for receiving method calls from Python.
+ * Clients reach the shim through one or more ShimTransports (FIFO pairs or a Unix socket).
  */
 public class PipeManager {
     
-    private static final String PIPE_NAME = "/tmp/dreambot_shim_pipe";
-    private static final String RESPONSE_PIPE_NAME = "/tmp/dreambot_shim_response_pipe";
+    private static final String TRANSPORT_PROPERTY = "dreambot.shim.transport";
+    private static final String TRANSPORT_FIFO = "fifo";
+    private static final String TRANSPORT_SOCKET = "socket";
+    static final String BATCH_METHOD = "batch";
+    private static final String SUBSCRIBE_METHOD = "subscribe";
+    private static final String UNSUBSCRIBE_METHOD = "unsubscribe";
+    private static final String STATS_METHOD = "shimStats";
+    private static final String HELLO_METHOD = "hello";
+    private static final String HEARTBEAT_METHOD = "heartbeat";
+    private static final String HEARTBEAT_OPTION = "heartbeat";
+    private static final String RESUME_OPTION = "resume=";
+    private static final String FORMAT_JSON = "json";
+    private static final String GENERATED_DISPATCHER = "DreamBotAPIWrapperDispatcher";
+    private static final String WORKERS_PROPERTY = "dreambot.shim.workers";
+    private static final String QUEUE_CAPACITY_PROPERTY = "dreambot.shim.queueCapacity";
+    private static final String MAX_IN_FLIGHT_PROPERTY = "dreambot.shim.maxInFlight";
+    private static final String IDEMPOTENCY_CAPACITY_PROPERTY = "dreambot.shim.idempotencyCapacity";
+    private static final String IDEMPOTENCY_TTL_PROPERTY = "dreambot.shim.idempotencyTtlMs";
+    private static final String JOURNAL_PROPERTY = "dreambot.shim.journal";
+    private static final String JOURNAL_DIR_PROPERTY = "dreambot.shim.journalDir";
+    private static final String JOURNAL_SEGMENT_BYTES_PROPERTY = "dreambot.shim.journalSegmentBytes";
+    private static final String JOURNAL_SEGMENTS_PROPERTY = "dreambot.shim.journalSegments";
+    private static final String HEARTBEAT_MS_PROPERTY = "dreambot.shim.heartbeatMs";
+    private static final String PEER_TIMEOUT_PROPERTY = "dreambot.shim.peerTimeoutMs";
+    private static final String RESUME_WINDOW_PROPERTY = "dreambot.shim.resumeWindowMs";
+    private static final int DEFAULT_WORKERS = 16;
+    private static final int DEFAULT_QUEUE_CAPACITY = 256;
+    private static final int DEFAULT_MAX_IN_FLIGHT = 32;
+    private static final int DEFAULT_IDEMPOTENCY_CAPACITY = 1024;
+    private static final long DEFAULT_IDEMPOTENCY_TTL_MS = 10 * 60 * 1000;
+    private static final int DEFAULT_JOURNAL_SEGMENT_BYTES = 16 * 1024 * 1024;
+    private static final int DEFAULT_JOURNAL_SEGMENTS = 4;
+    private static final long DEFAULT_HEARTBEAT_MS = 5000;
+    private static final long DEFAULT_PEER_TIMEOUT_MS = 15000;
+    private static final long DEFAULT_RESUME_WINDOW_MS = 60000;
+    private static final String HEARTBEAT_EVENT = "{\"event\":\"heartbeat\"}";
     private static final Gson gson = new Gson();
     private static final AtomicBoolean running = new AtomicBoolean(false);
-    private static Thread listenerThread;
+    private static ShimInstance instance = new ShimInstance(ShimInstance.DEFAULT_ID);
+    private static List<ShimTransport> transports = new ArrayList<>();
+    private static RequestScheduler requestScheduler;
+    private static ScheduledExecutorService deadlineScheduler;
     private static DreamBotAPIWrapper apiWrapper;
+    private static RpcDispatcher dispatcher;
+    private static List<String> methodTable = Collections.emptyList();
+    private static int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private static long heartbeatMs = DEFAULT_HEARTBEAT_MS;
+    private static long peerTimeoutMs = DEFAULT_PEER_TIMEOUT_MS;
+    private static long resumeWindowMs = DEFAULT_RESUME_WINDOW_MS;
+    private static final AtomicLong deadPeers = new AtomicLong();
+    private static final Map<ShimConnection, Session> sessions = new ConcurrentHashMap<>();
+    private static final ThreadLocal<AtomicInteger> windowSlot = new ThreadLocal<>();
+    private static IdempotencyCache idempotencyCache;
+    private static RpcJournal journal;
+    private static final EventPublisher eventPublisher = new EventPublisher();
+    private static final QueryCache queryCache = new QueryCache(Integer.getInteger("dreambot.shim.queryCacheCapacity", 1024));
+    private static final SingleFlight singleFlight = new SingleFlight();
+    private static final GameThreadExecutor gameThread = new GameThreadExecutor(
+            !"false".equalsIgnoreCase(System.getProperty("dreambot.shim.gameThread")),
+            Long.getLong("dreambot.shim.gameThreadBudgetMs", 20));
     
     /**
      * Initialize the named pipe receiver and start listening
      */
     public static boolean initialize(DreamBotAPIWrapper wrapper) {
+        return initialize(wrapper, null);
+    }
+    
+    /**
+     * Initialize the receiver under an instance id (an account or profile name) so its
+     * endpoints don't collide with other shims on the host; null falls back to the
+     * dreambot.shim.instance property, then to the default instance
+     */
+    public static boolean initialize(DreamBotAPIWrapper wrapper, String instanceId) {
         try {
             apiWrapper = wrapper;
+            instance = registerInstance(instanceId);
+            System.out.println("Shim instance: " + instance);
             
-            // Create named pipe if it doesn't exist
-            createNamedPipe();
+            // Resolve every exposed wrapper method once, up front
+            dispatcher = createDispatcher(wrapper);
+            methodTable = buildMethodTable();
             
-            // Start listening thread
-            startListening();
+            // Requests wait in a bounded priority queue for a fixed pool of workers
+            requestScheduler = new RequestScheduler(Integer.getInteger(WORKERS_PROPERTY, DEFAULT_WORKERS),
+                    Integer.getInteger(QUEUE_CAPACITY_PROPERTY, DEFAULT_QUEUE_CAPACITY));
+            // Clients may pipeline up to this many requests per connection without waiting
+            maxInFlight = Math.max(1, Integer.getInteger(MAX_IN_FLIGHT_PROPERTY, DEFAULT_MAX_IN_FLIGHT));
+            // Retries that reuse a call's idempotency key get the first result back
+            idempotencyCache = new IdempotencyCache(Integer.getInteger(IDEMPOTENCY_CAPACITY_PROPERTY, DEFAULT_IDEMPOTENCY_CAPACITY),
+                    Long.getLong(IDEMPOTENCY_TTL_PROPERTY, DEFAULT_IDEMPOTENCY_TTL_MS));
+            journal = openJournal();
+            deadlineScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "shim-deadline");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // Heartbeat sessions hear from us this often and are dropped after peerTimeoutMs of silence
+            heartbeatMs = Math.max(100, Long.getLong(HEARTBEAT_MS_PROPERTY, DEFAULT_HEARTBEAT_MS));
+            peerTimeoutMs = Math.max(heartbeatMs, Long.getLong(PEER_TIMEOUT_PROPERTY, DEFAULT_PEER_TIMEOUT_MS));
+            resumeWindowMs = Long.getLong(RESUME_WINDOW_PROPERTY, DEFAULT_RESUME_WINDOW_MS);
+            deadlineScheduler.scheduleAtFixedRate(PipeManager::checkLiveness, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+            
+            // Create the endpoints and start accepting clients
+            transports = createTransports();
+            startTransports();
             
             System.out.println("PipeManager initialized successfully");
             return true;
@@ -44,198 +141,707 @@ public class PipeManager {
     }
     
     /**
-     * Create the named pipe using mkfifo command
+     * Pick this shim's instance and add it to the discovery registry. An unnamed shim
+     * takes the default instance, or its own "pid-<pid>" one if another live shim has it.
      */
-    private static void createNamedPipe() throws IOException, InterruptedException {
-        // Create request pipe
-        if (!Files.exists(Paths.get(PIPE_NAME))) {
-            Process mkfifoProcess = Runtime.getRuntime().exec("mkfifo " + PIPE_NAME);
-            int exitCode = mkfifoProcess.waitFor();
-            if (exitCode != 0) {
-                throw new IOException("Failed to create named pipe with mkfifo");
+    private static ShimInstance registerInstance(String instanceId) {
+        String requested = instanceId != null ? instanceId : System.getProperty(ShimInstance.INSTANCE_PROPERTY);
+        ShimInstance chosen = new ShimInstance(requested);
+        try {
+            try {
+                InstanceRegistry.register(chosen);
+            } catch (IllegalStateException e) {
+                if (requested != null) {
+                    throw e;
+                }
+                chosen = new ShimInstance("pid-" + ProcessHandle.current().pid());
+                System.out.println(e.getMessage() + ", using instance " + chosen);
+                InstanceRegistry.register(chosen);
             }
-            System.out.println("Created named pipe: " + PIPE_NAME);
-        } else {
-            System.out.println("Named pipe already exists: " + PIPE_NAME);
+        } catch (IOException e) {
+            System.err.println("Instance registry unavailable, continuing without discovery: " + e.getMessage());
         }
-        
-        // Create response pipe
-        if (!Files.exists(Paths.get(RESPONSE_PIPE_NAME))) {
-            Process mkfifoProcess = Runtime.getRuntime().exec("mkfifo " + RESPONSE_PIPE_NAME);
-            int exitCode = mkfifoProcess.waitFor();
-            if (exitCode != 0) {
-                throw new IOException("Failed to create response pipe with mkfifo");
+        return chosen;
+    }
+    
+    /**
+     * Journal every request and reply unless dreambot.shim.journal is false
+     */
+    private static RpcJournal openJournal() {
+        if ("false".equalsIgnoreCase(System.getProperty(JOURNAL_PROPERTY))) {
+            return null;
+        }
+        RpcJournal opened = new RpcJournal(Paths.get(System.getProperty(JOURNAL_DIR_PROPERTY, instance.getJournalDirectory())),
+                Integer.getInteger(JOURNAL_SEGMENT_BYTES_PROPERTY, DEFAULT_JOURNAL_SEGMENT_BYTES),
+                Integer.getInteger(JOURNAL_SEGMENTS_PROPERTY, DEFAULT_JOURNAL_SEGMENTS));
+        try {
+            opened.open();
+            return opened;
+        } catch (IOException e) {
+            System.err.println("RPC journal unavailable, continuing without it: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Use the dispatcher generated by RpcProcessor when it was compiled in,
+     * otherwise build the MethodHandle table from the wrapper class
+     */
+    private static RpcDispatcher createDispatcher(DreamBotAPIWrapper wrapper) {
+        try {
+            Class<?> generated = Class.forName(GENERATED_DISPATCHER);
+            RpcDispatcher generatedDispatcher = (RpcDispatcher) generated
+                    .getConstructor(DreamBotAPIWrapper.class).newInstance(wrapper);
+            System.out.println("Using generated dispatcher " + GENERATED_DISPATCHER);
+            return generatedDispatcher;
+        } catch (ClassNotFoundException e) {
+            System.out.println("Generated dispatcher not found, using MethodHandle dispatch table");
+        } catch (ReflectiveOperationException e) {
+            System.err.println("Failed to create generated dispatcher: " + e.getMessage());
+        }
+        return DispatchTable.build(DreamBotAPIWrapper.class, wrapper);
+    }
+    
+    /**
+     * Method names in binary ordinal order: the wrapper's methods, then the shim's own
+     */
+    private static List<String> buildMethodTable() {
+        List<String> table = new ArrayList<>(dispatcher.getMethodNames());
+        table.add(SUBSCRIBE_METHOD);
+        table.add(UNSUBSCRIBE_METHOD);
+        table.add(STATS_METHOD);
+        return Collections.unmodifiableList(table);
+    }
+    
+    /**
+     * Build the transports named by the dreambot.shim.transport system property,
+     * a comma-separated list of "fifo" and "socket" (default "fifo")
+     */
+    private static List<ShimTransport> createTransports() {
+        List<ShimTransport> created = new ArrayList<>();
+        String configured = System.getProperty(TRANSPORT_PROPERTY, TRANSPORT_FIFO);
+        for (String name : configured.split(",")) {
+            switch (name.trim().toLowerCase()) {
+                case TRANSPORT_FIFO:
+                    created.add(new FifoTransport(instance.getPipeName(), instance.getResponsePipeName()));
+                    break;
+                case TRANSPORT_SOCKET:
+                    created.add(new UnixSocketTransport(instance.getSocketName()));
+                    break;
+                default:
+                    System.err.println("Unknown transport '" + name + "', ignoring");
             }
-            System.out.println("Created response pipe: " + RESPONSE_PIPE_NAME);
-        } else {
-            System.out.println("Response pipe already exists: " + RESPONSE_PIPE_NAME);
         }
+        if (created.isEmpty()) {
+            created.add(new FifoTransport(instance.getPipeName(), instance.getResponsePipeName()));
+        }
+        return created;
     }
     
     /**
-     * Start the listening thread
+     * Start every configured transport, feeding requests into the dispatcher
      */
-    private static void startListening() {
+    private static void startTransports() throws IOException {
         running.set(true);
-        listenerThread = new Thread(() -> {
-            System.out.println("Started listening for method calls on " + PIPE_NAME);
+        ShimTransport.Listener listener = new ShimTransport.Listener() {
+            @Override
+            public void onRequest(ShimConnection connection, String line) {
+                dispatch(connection, line);
+            }
             
-            while (running.get()) {
-                try (BufferedReader reader = new BufferedReader(new FileReader(PIPE_NAME))) {
-                    String line;
-                    while ((line = reader.readLine()) != null && running.get()) {
-                        if (!line.trim().isEmpty()) {
-                            processMethodCall(line.trim());
-                        }
-                    }
-                } catch (IOException e) {
-                    if (running.get()) {
-                        System.err.println("Error reading from pipe: " + e.getMessage());
-                        try {
-                            Thread.sleep(1000); // Wait before retrying
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                            break;
-                        }
+            @Override
+            public void onFrame(ShimConnection connection, ByteBuffer frame) {
+                dispatchFrame(connection, frame);
+            }
+            
+            @Override
+            public void onConnect(ShimConnection connection) {
+                Session session = new Session(connection);
+                sessions.put(connection, session);
+                System.out.println("Session " + session.getId() + " opened on " + connection.getId());
+            }
+            
+            @Override
+            public void onDisconnect(ShimConnection connection) {
+                disconnect(connection);
+            }
+        };
+        Map<String, String> endpoints = new LinkedHashMap<>();
+        for (ShimTransport transport : transports) {
+            transport.start(listener);
+            endpoints.putAll(transport.getRegistryEndpoints());
+            System.out.println("Transport started: " + transport.getEndpoint());
+        }
+        // Only endpoints that are actually served, so clients never pick a transport that isn't running
+        InstanceRegistry.publishEndpoints(instance, endpoints);
+    }
+    
+    /**
+     * End a connection's session, parking its subscriptions for a reconnect; safe to call
+     * more than once
+     */
+    private static void disconnect(ShimConnection connection) {
+        Session session = sessions.remove(connection);
+        if (session == null) {
+            eventPublisher.remove(connection);
+            return;
+        }
+        eventPublisher.park(connection, session.getResumeToken());
+        if (journal != null) {
+            journal.forgetSession(session.getId());
+        }
+        System.out.println("Session " + session.getId() + " closed");
+    }
+    
+    /**
+     * Periodic check on the deadline thread: drop sessions whose client stopped reading
+     * replies or, having asked for heartbeats, stopped sending anything; send the rest
+     * of the heartbeat sessions a heartbeat
+     */
+    private static void checkLiveness() {
+        try {
+            for (Session session : sessions.values()) {
+                ShimConnection connection = session.getConnection();
+                String reason = null;
+                if (connection.getWriteStallMillis() > peerTimeoutMs) {
+                    reason = "stopped reading replies";
+                } else if (session.isHeartbeat() && session.getSilenceMillis() > peerTimeoutMs) {
+                    reason = "went silent";
+                }
+                if (reason != null) {
+                    deadPeers.incrementAndGet();
+                    System.out.println("Dropping session " + session.getId() + ": client " + reason
+                            + " for over " + peerTimeoutMs + " ms");
+                    connection.close();
+                    disconnect(connection);
+                } else if (session.isHeartbeat()) {
+                    if (connection.isBinary()) {
+                        connection.sendFrame(BinaryCodec.encodeHeartbeat());
+                    } else {
+                        connection.send(HEARTBEAT_EVENT);
                     }
                 }
             }
-            
-            System.out.println("Stopped listening for method calls");
-        });
+            eventPublisher.expireParked(resumeWindowMs);
+        } catch (RuntimeException e) {
+            // An exception would cancel the periodic check for good
+            System.err.println("Error checking client liveness: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Queue a request for the worker pool by priority; replies are correlated by
+     * request id and may be sent out of order
+     */
+    private static void dispatch(ShimConnection connection, String jsonRequest) {
+        Session session = sessionOf(connection);
+        if (session == null) {
+            return;
+        }
+        session.touch();
+        RpcRequest request;
+        try {
+            request = RpcCodec.decode(jsonRequest);
+        } catch (IOException e) {
+            System.err.println("Error parsing request: " + e.getMessage());
+            writeResponse(connection, RpcResponse.error(null, "unknown", e.getMessage()));
+            return;
+        }
         
-        listenerThread.setDaemon(true);
-        listenerThread.start();
+        // Heartbeats only prove the client is alive; they get no reply
+        if (HEARTBEAT_METHOD.equals(request.getMethod())) {
+            return;
+        }
+        System.out.println("Received request: " + jsonRequest);
+        
+        // Answered on the transport thread so the format switch lands before the next request is read
+        if (HELLO_METHOD.equals(request.getMethod())) {
+            negotiate(connection, session, request);
+            return;
+        }
+        schedule(connection, session, request);
     }
     
     /**
-     * Process a method call request from Python
+     * Decode a binary call frame and queue it like a JSON request
      */
-    private static void processMethodCall(String jsonRequest) {
+    private static void dispatchFrame(ShimConnection connection, ByteBuffer frame) {
+        Session session = sessionOf(connection);
+        if (session == null) {
+            return;
+        }
+        session.touch();
+        if (BinaryCodec.frameType(frame) == BinaryCodec.FRAME_HEARTBEAT) {
+            return;
+        }
+        // Read before decoding moves the buffer on, so a bad body is still answered under its id
+        String id = BinaryCodec.callId(frame);
+        RpcRequest request;
         try {
-            System.out.println("Received request: " + jsonRequest);
-            
-            JsonObject request = gson.fromJson(jsonRequest, JsonObject.class);
-            String methodName = request.get("method").getAsString();
-            JsonArray argsArray = request.getAsJsonArray("args");
+            request = BinaryCodec.decodeCall(frame, methodTable);
+        } catch (IOException e) {
+            System.err.println("Error decoding frame: " + e.getMessage());
+            writeResponse(connection, RpcResponse.error(id, "unknown", e.getMessage()));
+            return;
+        }
+        schedule(connection, session, request);
+    }
+    
+    /**
+     * Pick the wire format for a connection from the client's preferences (hello args).
+     * Besides formats a client may offer "heartbeat" to exchange heartbeats, and
+     * "resume=<token>" with the resumeToken of its previous session to get that
+     * session's subscriptions back. The reply is always a JSON line; a connection
+     * that picks binary switches after it.
+     */
+    private static void negotiate(ShimConnection connection, Session session, RpcRequest request) {
+        String format = null;
+        boolean heartbeat = false;
+        String resumeToken = null;
+        for (String offered : ArgConverters.toStringArray(request.getArgs())) {
+            if (format == null && (BinaryCodec.FORMAT_NAME.equalsIgnoreCase(offered) || FORMAT_JSON.equalsIgnoreCase(offered))) {
+                format = offered.toLowerCase();
+            } else if (HEARTBEAT_OPTION.equalsIgnoreCase(offered)) {
+                heartbeat = true;
+            } else if (offered.startsWith(RESUME_OPTION)) {
+                resumeToken = offered.substring(RESUME_OPTION.length());
+            }
+        }
+        if (format == null) {
+            format = FORMAT_JSON;
+        }
+        Map<String, Object> hello = new LinkedHashMap<>();
+        hello.put("format", format);
+        hello.put("version", BinaryCodec.VERSION);
+        hello.put("methods", methodTable);
+        hello.put("maxFrameBytes", BinaryCodec.MAX_FRAME_BYTES);
+        hello.put("maxInFlight", maxInFlight);
+        session.recordRequest();
+        hello.put("session", session.getId());
+        hello.put("resumeToken", session.getResumeToken());
+        if (heartbeat) {
+            session.setHeartbeat(true);
+            hello.put("heartbeatMs", heartbeatMs);
+            hello.put("peerTimeoutMs", peerTimeoutMs);
+        }
+        if (resumeToken != null) {
+            List<String> resumed = new ArrayList<>();
+            for (EventPublisher.EventType type : eventPublisher.resume(resumeToken, connection)) {
+                resumed.add(type.getWireName());
+            }
+            hello.put("resumed", resumed);
+        }
+        writeResponse(connection, RpcResponse.ok(request.getId(), HELLO_METHOD, gson.toJson(hello)));
+        if (BinaryCodec.FORMAT_NAME.equals(format)) {
+            connection.switchToBinary();
+            System.out.println("Connection " + connection.getId() + " switched to binary frames");
+        }
+    }
+    
+    /**
+     * Queue a decoded request for the worker pool by its kind and session. Clients may
+     * pipeline requests; each session gets at most maxInFlight unfinished non-control
+     * requests, and a request holds its slot until it is answered.
+     */
+    private static void schedule(ShimConnection connection, Session session, RpcRequest request) {
+        String methodName = request.getMethod() != null ? request.getMethod() : "unknown";
+        Rpc.Kind kind = classify(request);
+        session.recordRequest();
+        if (journal != null) {
+            journal.recordRequest(session.getId(), request);
+        }
+        AtomicInteger window = null;
+        if (kind != Rpc.Kind.CONTROL) {
+            window = session.getInFlight();
+            if (window.incrementAndGet() > maxInFlight) {
+                window.decrementAndGet();
+                writeResponse(connection, RpcResponse.failure(request.getId(), methodName, RpcResponse.STATUS_BUSY,
+                        "Too many requests in flight (window is " + maxInFlight + ")"));
+                return;
+            }
+        }
+        AtomicInteger slot = window;
+        // Optional deadline: {"timeoutMs": 5000} bounds the whole request from arrival, queueing and batch included
+        RequestContext context = request.getTimeoutMs() > 0 ? RequestContext.create(request.getTimeoutMs()) : null;
+        ScheduledFuture<?> timeout = context != null
+                ? scheduleTimeout(connection, request.getId(), methodName, context) : null;
+        Runnable task = () -> {
+            windowSlot.set(slot);
+            try {
+                processMethodCall(connection, request, context, timeout);
+            } finally {
+                releaseWindowSlot();
+            }
+        };
+        if (!requestScheduler.submit(kind, session.getId(), task)) {
+            if (slot != null) {
+                slot.decrementAndGet();
+            }
+            if (timeout != null) {
+                timeout.cancel(false);
+                if (!context.claimReply()) {
+                    return;
+                }
+            }
+            System.err.println("Request queue full, rejecting " + kind + " request " + methodName);
+            writeResponse(connection, RpcResponse.failure(request.getId(), methodName, RpcResponse.STATUS_BUSY,
+                    "Server busy: request queue is full (" + requestScheduler.getQueueDepth() + " queued)"));
+        }
+    }
+    
+    /**
+     * The session of a connection, or null once disconnect() has ended it. Transports
+     * announce every connection through onConnect before its first input, so input from
+     * a connection without one raced its disconnect and is ignored rather than opening
+     * a session nothing will ever close.
+     */
+    private static Session sessionOf(ShimConnection connection) {
+        return sessions.get(connection);
+    }
+    
+    /**
+     * Give back the in-flight slot held by the request on this worker, if any
+     */
+    private static void releaseWindowSlot() {
+        AtomicInteger slot = windowSlot.get();
+        if (slot != null) {
+            windowSlot.remove();
+            slot.decrementAndGet();
+        }
+    }
+    
+    /**
+     * Scheduling kind of a request; a batch is a query only if every call in it is one
+     */
+    private static Rpc.Kind classify(RpcRequest request) {
+        if (!request.isBatch()) {
+            return kindOf(request.getMethod());
+        }
+        for (RpcRequest call : request.getBatch()) {
+            if (kindOf(call.getMethod()) != Rpc.Kind.QUERY) {
+                return Rpc.Kind.ACTION;
+            }
+        }
+        return Rpc.Kind.QUERY;
+    }
+    
+    private static Rpc.Kind kindOf(String methodName) {
+        if (methodName == null) {
+            return Rpc.Kind.ACTION;
+        }
+        switch (methodName) {
+            case SUBSCRIBE_METHOD:
+            case UNSUBSCRIBE_METHOD:
+            case STATS_METHOD:
+                return Rpc.Kind.CONTROL;
+            default:
+                Rpc.Kind kind = dispatcher.kindOf(methodName);
+                // Unknown methods fail fast, so they need no priority
+                return kind != null ? kind : Rpc.Kind.QUERY;
+        }
+    }
+    
+    /**
+     * Process a method call request from Python. A request whose deadline passed while
+     * it was queued has already been answered with a timeout and is skipped.
+     */
+    private static void processMethodCall(ShimConnection connection, RpcRequest request,
+                                          RequestContext context, ScheduledFuture<?> timeout) {
+        String requestId = request.getId();
+        String methodName = request.getMethod() != null ? request.getMethod() : "unknown";
+        if (context != null && (context.isReplied() || context.isExpired())) {
+            timeout.cancel(false);
+            System.err.println("Skipping request " + requestId + " (" + methodName + "): deadline passed while queued");
+            if (context.claimReply()) {
+                writeTimeout(connection, requestId, methodName, context);
+            }
+            return;
+        }
+        try {
+            if (context != null) {
+                context.bind();
+            }
             
-            // Get request ID if present
-            String requestId = request.has("id") ? request.get("id").getAsString() : null;
+            // Batch envelope: {"id": ..., "batch": [{"method": ..., "args": [...]}, ...]}
+            if (request.isBatch()) {
+                processBatch(connection, request);
+                return;
+            }
             
-            // Convert JSON args to Object array
-            Object[] args = new Object[argsArray.size()];
-            for (int i = 0; i < argsArray.size(); i++) {
-                JsonElement element = argsArray.get(i);
-                if (element.isJsonPrimitive()) {
-                    if (element.getAsJsonPrimitive().isString()) {
-                        args[i] = element.getAsString();
-                    } else if (element.getAsJsonPrimitive().isNumber()) {
-                        // Try to determine if it's an integer or double
-                        String numStr = element.getAsString();
-                        if (numStr.contains(".")) {
-                            args[i] = element.getAsDouble();
-                        } else {
-                            args[i] = element.getAsInt();
-                        }
-                    } else if (element.getAsJsonPrimitive().isBoolean()) {
-                        args[i] = element.getAsBoolean();
-                    }
-                } else {
-                    args[i] = element.toString();
-                }
+            // Optional progress frames: {"progress": true} streams interim values before the reply
+            if (request.wantsProgress()) {
+                ProgressStream.begin(connection, requestId, methodName);
             }
             
             // Call the method
-            Object result = callMethod(methodName, args);
+            Object result = invoke(connection, request);
             System.out.println("Method " + methodName + " result: " + result);
             
             // Send response back through response pipe
-            sendResponse(requestId, methodName, result, null);
+            writeResponse(connection, RpcResponse.ok(requestId, methodName, result));
             
         } catch (Exception e) {
             System.err.println("Error processing method call: " + e.getMessage());
             e.printStackTrace();
             // Send error response
-            sendResponse(null, "unknown", null, e.getMessage());
+            writeResponse(connection, RpcResponse.error(requestId, methodName, e.getMessage()));
+        } finally {
+            ProgressStream.end();
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            if (context != null) {
+                context.end();
+            }
         }
     }
     
     /**
-     * Dynamically call a method by name using reflection
+     * Reply with a timeout status once the deadline passes and interrupt the worker,
+     * unless the worker replied first. Scheduled on arrival, so time spent queued counts.
      */
-    private static Object callMethod(String methodName, Object... args) {
-        try {
-            // Get method parameter types
-            Class<?>[] paramTypes = new Class<?>[args.length];
-            for (int i = 0; i < args.length; i++) {
-                paramTypes[i] = args[i].getClass();
-                // Handle primitive type boxing
-                if (paramTypes[i] == Integer.class) paramTypes[i] = int.class;
-                else if (paramTypes[i] == Double.class) paramTypes[i] = double.class;
-                else if (paramTypes[i] == Boolean.class) paramTypes[i] = boolean.class;
-                else if (paramTypes[i] == Float.class) paramTypes[i] = float.class;
-                else if (paramTypes[i] == Long.class) paramTypes[i] = long.class;
+    private static ScheduledFuture<?> scheduleTimeout(ShimConnection connection, String requestId,
+                                                      String methodName, RequestContext context) {
+        return deadlineScheduler.schedule(() -> {
+            if (!context.claimReply()) {
+                return;
             }
-            
-            // Try to find the method in DreamBotAPIWrapper class first
-            Method method = null;
-            try {
-                method = DreamBotAPIWrapper.class.getDeclaredMethod(methodName, paramTypes);
-            } catch (NoSuchMethodException e) {
-                // Try with different parameter types (e.g., int vs Integer)
-                Method[] methods = DreamBotAPIWrapper.class.getDeclaredMethods();
-                for (Method m : methods) {
-                    if (m.getName().equals(methodName) && m.getParameterCount() == args.length) {
-                        method = m;
-                        break;
-                    }
-                }
+            System.err.println("Request " + requestId + " (" + methodName + ") exceeded its "
+                    + context.getTimeoutMs() + " ms deadline");
+            writeTimeout(connection, requestId, methodName, context);
+            context.interruptOwner();
+        }, context.getTimeoutMs(), TimeUnit.MILLISECONDS);
+    }
+    
+    private static void writeTimeout(ShimConnection connection, String requestId, String methodName,
+                                     RequestContext context) {
+        writeResponse(connection, RpcResponse.failure(requestId, methodName, RpcResponse.STATUS_TIMEOUT,
+                "Deadline of " + context.getTimeoutMs() + " ms exceeded"));
+    }
+    
+    /**
+     * Run every call of a batch back-to-back and reply with one response line holding
+     * the results in request order. Each run of consecutive non-action calls goes to the
+     * script thread as a single command, so its reads all come from one drain; actions
+     * run one by one in their own leased steps.
+     */
+    private static void processBatch(ShimConnection connection, RpcRequest request) {
+        List<RpcRequest> batch = request.getBatch();
+        List<RpcResponse> results = new ArrayList<>(batch.size());
+        RequestContext context = RequestContext.current();
+        int next = 0;
+        while (next < batch.size() && !RequestContext.shouldAbort()) {
+            if (runsAlone(batch.get(next))) {
+                results.add(runBatchCall(connection, batch.get(next)));
+                next++;
+                continue;
             }
-            
-            if (method != null) {
-                method.setAccessible(true);
-                return method.invoke(apiWrapper, args);
+            int end = next;
+            while (end < batch.size() && !runsAlone(batch.get(end))) {
+                end++;
+            }
+            List<RpcRequest> reads = batch.subList(next, end);
+            Object done = gameThread.call(BATCH_METHOD, () -> runBatchCalls(connection, reads, context));
+            if (done instanceof List) {
+                for (Object response : (List<?>) done) {
+                    results.add((RpcResponse) response);
+                }
             } else {
-                return "Error: Method '" + methodName + "' not found";
+                // The script thread never got to them (deadline or interrupt)
+                for (RpcRequest call : reads) {
+                    results.add(RpcResponse.error(call.getId(), call.getMethod() != null ? call.getMethod() : "unknown",
+                            String.valueOf(done)));
+                }
             }
-            
-        } catch (Exception e) {
-            return "Error executing method '" + methodName + "': " + e.getMessage();
+            next = end;
         }
+        System.out.println("Batch of " + batch.size() + " calls completed");
+        writeResponse(connection, RpcResponse.batch(request.getId(), BATCH_METHOD, results));
+    }
+    
+    /**
+     * Actions take their own leased steps, and keyed calls may wait on another caller's
+     * result, so neither can run inside a batch's single script thread command
+     */
+    private static boolean runsAlone(RpcRequest call) {
+        return call.getIdempotencyKey() != null
+                || (call.getMethod() != null && dispatcher.kindOf(call.getMethod()) == Rpc.Kind.ACTION);
     }
     
     /**
-     * Send response back to Python through response pipe
+     * Run consecutive batch calls on the script thread, stopping at the worker's deadline
      */
-    private static void sendResponse(String requestId, String methodName, Object result, String error) {
+    private static List<RpcResponse> runBatchCalls(ShimConnection connection, List<RpcRequest> calls,
+                                                   RequestContext context) {
+        List<RpcResponse> results = new ArrayList<>(calls.size());
+        for (RpcRequest call : calls) {
+            if (context != null && context.isExpired()) {
+                break;
+            }
+            results.add(runBatchCall(connection, call));
+        }
+        return results;
+    }
+    
+    private static RpcResponse runBatchCall(ShimConnection connection, RpcRequest call) {
+        String methodName = call.getMethod() != null ? call.getMethod() : "unknown";
         try {
-            JsonObject response = new JsonObject();
-            if (requestId != null) {
-                response.addProperty("id", requestId);
+            if (call.getMethod() == null) {
+                throw new IllegalArgumentException("Batch call has no method");
             }
-            response.addProperty("method", methodName);
-            
-            if (error != null) {
-                response.addProperty("error", error);
-            } else {
-                // Convert result to appropriate JSON type
-                if (result instanceof Boolean) {
-                    response.addProperty("result", (Boolean) result);
-                } else if (result instanceof Number) {
-                    response.addProperty("result", (Number) result);
-                } else {
-                    response.addProperty("result", result.toString());
+            return RpcResponse.ok(call.getId(), methodName, invoke(connection, call));
+        } catch (Exception e) {
+            return RpcResponse.error(call.getId(), methodName, e.getMessage());
+        }
+    }
+    
+    /**
+     * Route a call to the shim's own methods or to the API wrapper; wrapper calls
+     * that carry an idempotency key go through the idempotency cache
+     */
+    private static Object invoke(ShimConnection connection, RpcRequest call) throws Exception {
+        String methodName = call.getMethod();
+        Object[] args = call.getArgs();
+        switch (methodName) {
+            case SUBSCRIBE_METHOD:
+                return "Subscribed to " + eventPublisher.subscribe(connection, ArgConverters.toStringArray(args));
+            case UNSUBSCRIBE_METHOD:
+                return "Unsubscribed; still subscribed to " + eventPublisher.unsubscribe(connection, ArgConverters.toStringArray(args));
+            case STATS_METHOD:
+                Map<String, Object> stats = requestScheduler.getStats();
+                stats.put("maxInFlight", maxInFlight);
+                Session own = sessionOf(connection);
+                stats.put("session", own != null ? own.getId() : null);
+                List<Map<String, Object>> sessionStats = new ArrayList<>();
+                for (Session session : sessions.values()) {
+                    Map<String, Object> entry = session.getStats();
+                    List<String> subscribed = new ArrayList<>();
+                    for (EventPublisher.EventType type : eventPublisher.getSubscriptions(session.getConnection())) {
+                        subscribed.add(type.getWireName());
+                    }
+                    entry.put("subscriptions", subscribed);
+                    sessionStats.add(entry);
+                }
+                stats.put("sessions", sessionStats);
+                stats.put("idempotency", idempotencyCache.getStats());
+                stats.put("queryCache", queryCache.getStats());
+                stats.put("singleFlight", singleFlight.getStats());
+                stats.put("gameThread", gameThread.getStats());
+                if (journal != null) {
+                    stats.put("journal", journal.getStats());
                 }
+                Map<String, Object> liveness = new LinkedHashMap<>();
+                liveness.put("heartbeatMs", heartbeatMs);
+                liveness.put("peerTimeoutMs", peerTimeoutMs);
+                liveness.put("deadPeers", deadPeers.get());
+                liveness.put("parkedSubscriptions", eventPublisher.getParkedCount());
+                stats.put("liveness", liveness);
+                return gson.toJson(stats);
+            default:
+                if (call.getIdempotencyKey() != null) {
+                    return idempotencyCache.execute(call.getIdempotencyKey(), methodName, args,
+                            () -> callWrapper(methodName, args));
+                }
+                return callWrapper(methodName, args);
+        }
+    }
+    
+    /**
+     * Call a wrapper method. Queries are served from the query cache when cacheable,
+     * coalesced with identical queries already running and run on the script thread;
+     * actions run on this worker in steps leased from the script thread and invalidate
+     * the cache around them. Control methods do neither, as they never touch the game.
+     */
+    private static Object callWrapper(String methodName, Object[] args) {
+        Rpc.Kind kind = dispatcher.kindOf(methodName);
+        if (kind == Rpc.Kind.QUERY && gameThread.isScriptThread()) {
+            // Part of a batch already on the script thread: read here, never wait on another worker's load
+            long ttl = dispatcher.cacheTtlOf(methodName);
+            Supplier<Object> read = () -> callMethod(methodName, args);
+            return ttl != 0 ? queryCache.get(methodName, args, ttl, read) : read.get();
+        }
+        if (kind == Rpc.Kind.QUERY) {
+            // Joining is limited to calls started since the last invalidation
+            Supplier<Object> load = () -> singleFlight.execute(methodName, args, queryCache.getGeneration(),
+                    () -> gameThread.call(methodName, () -> callMethod(methodName, args)));
+            long ttl = dispatcher.cacheTtlOf(methodName);
+            return ttl != 0 ? queryCache.get(methodName, args, ttl, load) : load.get();
+        }
+        if (kind != Rpc.Kind.ACTION) {
+            return callMethod(methodName, args);
+        }
+        queryCache.invalidate();
+        try {
+            if (gameThread.acquireLease() == GameThreadExecutor.LeaseResult.REFUSED) {
+                // Running anyway would click and walk alongside the script thread
+                return "Error executing method '" + methodName + "': " + leaseRefusal();
             }
-            
-            String responseJson = gson.toJson(response);
+            return callMethod(methodName, args);
+        } finally {
+            // The action may have re-taken its lease after its last wait
+            gameThread.releaseLease();
+            queryCache.invalidate();
+        }
+    }
+    
+    /**
+     * Why this worker could not lease the script thread for an action
+     */
+    private static String leaseRefusal() {
+        RequestContext context = RequestContext.current();
+        if (context != null && context.isExpired()) {
+            return "deadline passed waiting for the game thread";
+        }
+        if (Job.isCancelRequested()) {
+            return "job cancelled waiting for the game thread";
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            return "interrupted waiting for the game thread";
+        }
+        return "this thread is already running an action on the game thread";
+    }
+    
+    /**
+     * Call a wrapper method by name through the precompiled dispatcher
+     */
+    private static Object callMethod(String methodName, Object... args) {
+        try {
+            return dispatcher.invoke(methodName, args);
+        } catch (NoSuchMethodException e) {
+            return "Error: Method '" + methodName + "' not found";
+        } catch (Throwable e) {
+            return "Error executing method '" + methodName + "': " + e.getMessage();
+        }
+    }
+    
+    /**
+     * Encode a reply and write it to the client's connection
+     */
+    private static void writeResponse(ShimConnection connection, RpcResponse response) {
+        // Free the slot first so a client at the edge of its window can send as soon as it reads this
+        releaseWindowSlot();
+        // A request past its deadline has already been answered with a timeout
+        RequestContext context = RequestContext.current();
+        if (context != null && !context.claimReply()) {
+            System.out.println("Dropping late reply: " + response.getMethod());
+            return;
+        }
+        Session session = sessions.get(connection);
+        if (session != null) {
+            session.recordReply(response.getStatus());
+            if (journal != null) {
+                journal.recordReply(session.getId(), response);
+            }
+        }
+        try {
+            if (connection.isBinary()) {
+                connection.sendFrame(BinaryCodec.encodeResponse(response));
+                return;
+            }
+            String responseJson = RpcCodec.encode(response);
             System.out.println("Sending response: " + responseJson);
             
-            // Write to response pipe
-            try (PrintWriter writer = new PrintWriter(new FileWriter(RESPONSE_PIPE_NAME))) {
-                writer.println(responseJson);
-                writer.flush();
-            }
+            connection.send(responseJson);
             
         } catch (Exception e) {
             System.err.println("Error sending response: " + e.getMessage());
@@ -248,18 +854,21 @@ public class PipeManager {
      */
     public static void stop() {
         running.set(false);
-        if (listenerThread != null) {
-            listenerThread.interrupt();
+        for (ShimTransport transport : transports) {
+            transport.stop();
         }
-        
-        try {
-            // Remove both pipes
-            Files.deleteIfExists(Paths.get(PIPE_NAME));
-            Files.deleteIfExists(Paths.get(RESPONSE_PIPE_NAME));
-            System.out.println("Named pipe receiver stopped and cleaned up");
-        } catch (Exception e) {
-            System.err.println("Error during cleanup: " + e.getMessage());
+        if (apiWrapper != null) {
+            apiWrapper.getJobManager().shutdown();
+        }
+        if (requestScheduler != null) {
+            deadlineScheduler.shutdownNow();
+            requestScheduler.shutdown(2000);
+        }
+        if (journal != null) {
+            journal.close();
         }
+        InstanceRegistry.unregister(instance);
+        System.out.println("Named pipe receiver stopped and cleaned up");
     }
     
     /**
@@ -273,13 +882,52 @@ public class PipeManager {
      * Get the pipe name
      */
     public static String getPipeName() {
-        return PIPE_NAME;
+        return instance.getPipeName();
     }
     
     /**
      * Get the response pipe name
      */
     public static String getResponsePipeName() {
-        return RESPONSE_PIPE_NAME;
+        return instance.getResponsePipeName();
+    }
+    
+    /**
+     * Get this shim's instance, which names all of its endpoints
+     */
+    public static ShimInstance getInstance() {
+        return instance;
+    }
+    
+    /**
+     * Get the publisher that pushes state change events to subscribed clients
+     */
+    public static EventPublisher getEventPublisher() {
+        return eventPublisher;
+    }
+    
+    /**
+     * Get the cache in front of the wrapper's query methods
+     */
+    public static QueryCache getQueryCache() {
+        return queryCache;
+    }
+    
+    /**
+     * Get the executor Main.onLoop drains to run queries on the script thread
+     */
+    public static GameThreadExecutor getGameThreadExecutor() {
+        return gameThread;
+    }
+    
+    /**
+     * Get the endpoints of all started transports
+     */
+    public static List<String> getEndpoints() {
+        List<String> endpoints = new ArrayList<>();
+        for (ShimTransport transport : transports) {
+            endpoints.add(transport.getEndpoint());
+        }
+        return endpoints;
     }
 }
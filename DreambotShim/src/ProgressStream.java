@@ -0,0 +1,81 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the progress of a call that asked for it ({"progress": true}) to its client
+ * as progress frames sent ahead of the final reply. Bound to the worker thread for the
+ * duration of the call and fed by Job.reportProgress; each frame carries every value
+ * reported so far, and frames are sent at most once per interval.
+ */
+final class ProgressStream {
+    
+    private static final ThreadLocal<ProgressStream> CURRENT = new ThreadLocal<>();
+    private static final long MIN_INTERVAL_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("dreambot.shim.progressIntervalMs", 250));
+    
+    private final ShimConnection connection;
+    private final String requestId;
+    private final String method;
+    private final Map<String, Object> values = new LinkedHashMap<>();
+    private long lastSentNanos = System.nanoTime() - MIN_INTERVAL_NANOS;
+    private boolean changed;
+    
+    private ProgressStream(ShimConnection connection, String requestId, String method) {
+        this.connection = connection;
+        this.requestId = requestId;
+        this.method = method;
+    }
+    
+    /**
+     * Bind a progress stream for this call to the calling thread
+     */
+    static void begin(ShimConnection connection, String requestId, String method) {
+        CURRENT.set(new ProgressStream(connection, requestId, method));
+    }
+    
+    /**
+     * Unbind from the calling thread; anything not yet sent is superseded by the final reply
+     */
+    static void end() {
+        CURRENT.remove();
+    }
+    
+    /**
+     * Record a value for the call on this thread, if it is streaming progress
+     */
+    static void report(String key, Object value) {
+        ProgressStream stream = CURRENT.get();
+        if (stream != null) {
+            stream.update(key, value);
+        }
+    }
+    
+    private void update(String key, Object value) {
+        if (!Objects.equals(values.put(key, value), value)) {
+            changed = true;
+        }
+        long now = System.nanoTime();
+        if (!changed || now - lastSentNanos < MIN_INTERVAL_NANOS) {
+            return;
+        }
+        // Nothing more once a timeout reply has gone out for this call
+        RequestContext context = RequestContext.current();
+        if (context != null && context.isReplied()) {
+            return;
+        }
+        changed = false;
+        lastSentNanos = now;
+        Map<String, Object> snapshot = new LinkedHashMap<>(values);
+        try {
+            if (connection.isBinary()) {
+                connection.sendFrame(BinaryCodec.encodeProgress(requestId, snapshot));
+            } else {
+                connection.send(RpcCodec.encode(RpcResponse.progress(requestId, method, snapshot)));
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error sending progress for " + method + ": " + e.getMessage());
+        }
+    }
+}
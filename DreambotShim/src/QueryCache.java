@@ -0,0 +1,134 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Memoizes results of QUERY methods that declare @Rpc(cacheTtlMs), keyed by method and
+ * arguments. Entries expire after their TTL, or at the next game tick for
+ * Rpc.UNTIL_NEXT_TICK, and every action invalidates all of them.
+ */
+public class QueryCache {
+    
+    /** Tick-scoped entries also expire after this long, in case game ticks stop (logged out) */
+    private static final long MAX_TICK_ENTRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    
+    private final int capacity;
+    private final Map<CallKey, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, MethodStats> stats = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private volatile long tick;
+    
+    public QueryCache(int capacity) {
+        this.capacity = capacity;
+    }
+    
+    /**
+     * Return a still-valid cached result, or load and cache a fresh one.
+     * Wrapper errors ("Error ..." strings) are returned but not cached.
+     */
+    public Object get(String method, Object[] args, long ttlMs, Supplier<Object> loader) {
+        CallKey key = new CallKey(method, args);
+        MethodStats methodStats = stats.computeIfAbsent(method, m -> new MethodStats());
+        // Read the generation before loading, so an action that starts meanwhile
+        // leaves this result already stale
+        long currentGeneration = generation.get();
+        long currentTick = tick;
+        long now = System.nanoTime();
+        
+        Entry entry = entries.get(key);
+        if (entry != null && entry.isValid(currentGeneration, currentTick, now)) {
+            methodStats.hits.increment();
+            return entry.value;
+        }
+        methodStats.misses.increment();
+        
+        Object value = loader.get();
+        if (value instanceof String && ((String) value).startsWith("Error")) {
+            return value;
+        }
+        if (entries.size() >= capacity) {
+            entries.clear();
+        }
+        long expiresAt = now + (ttlMs == Rpc.UNTIL_NEXT_TICK ? MAX_TICK_ENTRY_NANOS : TimeUnit.MILLISECONDS.toNanos(ttlMs));
+        entries.put(key, new Entry(value, currentGeneration, ttlMs == Rpc.UNTIL_NEXT_TICK, currentTick, expiresAt));
+        return value;
+    }
+    
+    /**
+     * Drop every cached result; called around anything that may change game state
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+        entries.clear();
+    }
+    
+    /**
+     * Invalidation count so far; results loaded in different generations never mix
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+    
+    /**
+     * Advance to a new game tick, expiring tick-scoped entries
+     */
+    public void onTick(long newTick) {
+        tick = newTick;
+    }
+    
+    /**
+     * Entry count, invalidations and hits/misses per method, for the shimStats method
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("entries", entries.size());
+        result.put("capacity", capacity);
+        result.put("invalidations", invalidations.get());
+        Map<String, Object> methods = new TreeMap<>();
+        for (Map.Entry<String, MethodStats> method : stats.entrySet()) {
+            long hits = method.getValue().hits.sum();
+            long misses = method.getValue().misses.sum();
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("hits", hits);
+            entry.put("misses", misses);
+            entry.put("hitRate", hits + misses > 0 ? Math.round(hits * 1000.0 / (hits + misses)) / 1000.0 : 0.0);
+            methods.put(method.getKey(), entry);
+        }
+        result.put("methods", methods);
+        return result;
+    }
+    
+    private static final class Entry {
+        final Object value;
+        final long generation;
+        final boolean tickScoped;
+        final long tick;
+        final long expiresAtNanos;
+        
+        Entry(Object value, long generation, boolean tickScoped, long tick, long expiresAtNanos) {
+            this.value = value;
+            this.generation = generation;
+            this.tickScoped = tickScoped;
+            this.tick = tick;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+        
+        boolean isValid(long currentGeneration, long currentTick, long now) {
+            return generation == currentGeneration
+                    && (!tickScoped || tick == currentTick)
+                    && now - expiresAtNanos < 0;
+        }
+    }
+    
+    private static final class MethodStats {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+    }
+}
@@ -0,0 +1,158 @@
+import org.dreambot.api.utilities.Sleep;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Deadline of the request being handled on the current worker thread.
+ * Handlers poll shouldAbort() in their loops and wait through sleepUntil() and sleep()
+ * so a request stops promptly once its deadline passes or its job is cancelled, and so
+ * the script thread is free while an action waits.
+ */
+public final class RequestContext {
+    
+    private static final ThreadLocal<RequestContext> CURRENT = new ThreadLocal<>();
+    
+    private final long timeoutMs;
+    private final long deadlineNanos;
+    private final AtomicBoolean replied = new AtomicBoolean(false);
+    private Thread owner;
+    
+    private RequestContext(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    }
+    
+    /**
+     * Start a deadline now, when the request arrives; bind() it on the worker that runs it
+     */
+    static RequestContext create(long timeoutMs) {
+        return new RequestContext(timeoutMs);
+    }
+    
+    /**
+     * Bind this deadline to the calling thread
+     */
+    void bind() {
+        synchronized (this) {
+            owner = Thread.currentThread();
+        }
+        CURRENT.set(this);
+    }
+    
+    /**
+     * Unbind from the calling thread and clear any interrupt raised by the deadline
+     */
+    void end() {
+        synchronized (this) {
+            owner = null;
+        }
+        CURRENT.remove();
+        Thread.interrupted();
+    }
+    
+    /**
+     * Claim the right to reply; only the first caller (worker or deadline) wins
+     */
+    boolean claimReply() {
+        return replied.compareAndSet(false, true);
+    }
+    
+    /**
+     * Check if a reply, final or timeout, has already been sent for this request
+     */
+    boolean isReplied() {
+        return replied.get();
+    }
+    
+    /**
+     * Interrupt the worker still running this request
+     */
+    void interruptOwner() {
+        synchronized (this) {
+            if (owner != null) {
+                owner.interrupt();
+            }
+        }
+    }
+    
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+    
+    public boolean isExpired() {
+        return System.nanoTime() - deadlineNanos >= 0;
+    }
+    
+    public long remainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+    
+    /**
+     * The context of the request running on this thread, or null if it has no deadline
+     */
+    public static RequestContext current() {
+        return CURRENT.get();
+    }
+    
+    /**
+     * Check if the current request has run past its deadline, its job was cancelled,
+     * or the thread was interrupted
+     */
+    public static boolean shouldAbort() {
+        RequestContext context = CURRENT.get();
+        return (context != null && context.isExpired())
+                || Job.isCancelRequested()
+                || Thread.currentThread().isInterrupted();
+    }
+    
+    /**
+     * Sleep.sleepUntil that also wakes on shouldAbort() and never waits past the deadline.
+     * An action hands the script thread back while it waits; each check of the condition
+     * takes it again for a moment.
+     */
+    public static boolean sleepUntil(BooleanSupplier condition, long timeoutMs) {
+        RequestContext context = CURRENT.get();
+        long bounded = context != null ? Math.min(timeoutMs, context.remainingMillis()) : timeoutMs;
+        GameThreadExecutor gameThread = PipeManager.getGameThreadExecutor();
+        if (!gameThread.releaseLease()) {
+            return Sleep.sleepUntil(() -> shouldAbort() || condition.getAsBoolean(), bounded) && !shouldAbort();
+        }
+        try {
+            return Sleep.sleepUntil(() -> shouldAbort() || gameThread.checkLeased(condition), bounded) && !shouldAbort();
+        } finally {
+            gameThread.acquireLease();
+        }
+    }
+    
+    /**
+     * Thread.sleep that hands the script thread back to the loop while an action waits
+     */
+    public static void sleep(long millis) throws InterruptedException {
+        GameThreadExecutor gameThread = PipeManager.getGameThreadExecutor();
+        boolean leased = gameThread.releaseLease();
+        try {
+            Thread.sleep(millis);
+        } finally {
+            if (leased) {
+                gameThread.acquireLease();
+            }
+        }
+    }
+    
+    /**
+     * Sleep.sleep for a random time in [min, max] that hands the script thread back while
+     * an action waits
+     */
+    public static void sleep(long min, long max) {
+        GameThreadExecutor gameThread = PipeManager.getGameThreadExecutor();
+        boolean leased = gameThread.releaseLease();
+        try {
+            Sleep.sleep(min, max);
+        } finally {
+            if (leased) {
+                gameThread.acquireLease();
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded inbound request queue in front of a fixed worker pool.
+ * Control requests are served before actions and actions before queries; within a
+ * kind sessions take turns, and each session's requests run in arrival order.
+ * A dedicated control worker keeps control requests moving even when every general
+ * worker is busy with a long action.
+ */
+public class RequestScheduler {
+    
+    /** Control requests have their own allowance so a flood of queries cannot crowd them out */
+    private static final int CONTROL_CAPACITY = 32;
+    
+    private final int capacity;
+    private final Map<Rpc.Kind, FairQueue> queues = new EnumMap<>(Rpc.Kind.class);
+    private final Map<Rpc.Kind, KindStats> stats = new EnumMap<>(Rpc.Kind.class);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Condition controlAvailable = lock.newCondition();
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicInteger busyWorkers = new AtomicInteger();
+    private volatile boolean running = true;
+    private int queued;
+    
+    public RequestScheduler(int workerCount, int capacity) {
+        this.capacity = capacity;
+        for (Rpc.Kind kind : Rpc.Kind.values()) {
+            queues.put(kind, new FairQueue());
+            stats.put(kind, new KindStats());
+        }
+        for (int i = 1; i <= workerCount; i++) {
+            workers.add(startWorker("shim-worker-" + i, false));
+        }
+        workers.add(startWorker("shim-control", true));
+    }
+    
+    /**
+     * Queue a request from a session; returns false if the queue for its kind is full
+     */
+    public boolean submit(Rpc.Kind kind, String sessionId, Runnable runnable) {
+        KindStats kindStats = stats.get(kind);
+        lock.lock();
+        try {
+            boolean full = kind == Rpc.Kind.CONTROL
+                    ? queues.get(kind).size() >= CONTROL_CAPACITY
+                    : queued - queues.get(Rpc.Kind.CONTROL).size() >= capacity;
+            if (!running || full) {
+                kindStats.rejected.incrementAndGet();
+                return false;
+            }
+            queues.get(kind).add(sessionId, new Task(runnable, System.nanoTime()));
+            queued++;
+            kindStats.submitted.incrementAndGet();
+            workAvailable.signal();
+            if (kind == Rpc.Kind.CONTROL) {
+                controlAvailable.signal();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Number of requests waiting for a worker
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Queue depth, throughput and wait times per kind, for the shimStats method
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            result.put("queueDepth", queued);
+            result.put("queueCapacity", capacity);
+            result.put("workers", workers.size() - 1);
+            result.put("busyWorkers", busyWorkers.get());
+            for (Rpc.Kind kind : Rpc.Kind.values()) {
+                KindStats kindStats = stats.get(kind);
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("depth", queues.get(kind).size());
+                entry.put("submitted", kindStats.submitted.get());
+                entry.put("rejected", kindStats.rejected.get());
+                entry.put("started", kindStats.started.get());
+                long started = Math.max(1, kindStats.started.get());
+                entry.put("avgWaitMs", TimeUnit.NANOSECONDS.toMicros(kindStats.totalWaitNanos.get() / started) / 1000.0);
+                entry.put("maxWaitMs", TimeUnit.NANOSECONDS.toMicros(kindStats.maxWaitNanos.get()) / 1000.0);
+                result.put(kind.name().toLowerCase(), entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+    
+    /**
+     * Drop queued requests and stop the workers, interrupting running requests
+     */
+    public void shutdown(long timeoutMs) {
+        running = false;
+        lock.lock();
+        try {
+            for (FairQueue queue : queues.values()) {
+                queue.clear();
+            }
+            queued = 0;
+            workAvailable.signalAll();
+            controlAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    
+    private Thread startWorker(String name, boolean controlOnly) {
+        Thread worker = new Thread(() -> workLoop(controlOnly), name);
+        worker.setDaemon(true);
+        worker.start();
+        return worker;
+    }
+    
+    private void workLoop(boolean controlOnly) {
+        while (running) {
+            Task task;
+            try {
+                task = take(controlOnly);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (task == null) {
+                continue;
+            }
+            busyWorkers.incrementAndGet();
+            try {
+                task.runnable.run();
+            } catch (RuntimeException e) {
+                System.err.println("Unhandled error in request worker: " + e.getMessage());
+                e.printStackTrace();
+            } finally {
+                busyWorkers.decrementAndGet();
+                // Don't let an interrupt aimed at this request leak into the next one
+                Thread.interrupted();
+            }
+        }
+    }
+    
+    /**
+     * Wait for the highest-priority request; the control worker only takes control requests
+     */
+    private Task take(boolean controlOnly) throws InterruptedException {
+        lock.lock();
+        try {
+            while (running) {
+                for (Rpc.Kind kind : Rpc.Kind.values()) {
+                    if (controlOnly && kind != Rpc.Kind.CONTROL) {
+                        break;
+                    }
+                    Task task = queues.get(kind).poll();
+                    if (task != null) {
+                        queued--;
+                        recordWait(kind, System.nanoTime() - task.enqueuedNanos);
+                        return task;
+                    }
+                }
+                (controlOnly ? controlAvailable : workAvailable).await();
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void recordWait(Rpc.Kind kind, long waitNanos) {
+        KindStats kindStats = stats.get(kind);
+        kindStats.started.incrementAndGet();
+        kindStats.totalWaitNanos.addAndGet(waitNanos);
+        kindStats.maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+    
+    private static final class Task {
+        final Runnable runnable;
+        final long enqueuedNanos;
+        
+        Task(Runnable runnable, long enqueuedNanos) {
+            this.runnable = runnable;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+    
+    /**
+     * Per-session FIFO queues served round-robin: each poll takes the oldest request
+     * of the next session in line, which then goes to the back if it has more
+     */
+    private static final class FairQueue {
+        private final Map<String, ArrayDeque<Task>> bySession = new HashMap<>();
+        private final ArrayDeque<String> turns = new ArrayDeque<>();
+        private int size;
+        
+        void add(String sessionId, Task task) {
+            ArrayDeque<Task> queue = bySession.get(sessionId);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                bySession.put(sessionId, queue);
+                turns.add(sessionId);
+            }
+            queue.add(task);
+            size++;
+        }
+        
+        Task poll() {
+            String sessionId = turns.poll();
+            if (sessionId == null) {
+                return null;
+            }
+            ArrayDeque<Task> queue = bySession.get(sessionId);
+            Task task = queue.poll();
+            if (queue.isEmpty()) {
+                bySession.remove(sessionId);
+            } else {
+                turns.add(sessionId);
+            }
+            size--;
+            return task;
+        }
+        
+        int size() {
+            return size;
+        }
+        
+        void clear() {
+            bySession.clear();
+            turns.clear();
+            size = 0;
+        }
+    }
+    
+    private static final class KindStats {
+        final AtomicLong submitted = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong started = new AtomicLong();
+        final AtomicLong totalWaitNanos = new AtomicLong();
+        final AtomicLong maxWaitNanos = new AtomicLong();
+    }
+}
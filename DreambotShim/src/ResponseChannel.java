@@ -0,0 +1,246 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-lived writer for a response pipe.
+ * Replies are queued and written by the channel's own thread, so a worker never blocks
+ * on a client that has not opened the pipe or stopped reading it. The pipe is opened
+ * on the first reply of a client session and kept open for every following one. A
+ * session whose client lets more than ShimConnection.MAX_PENDING_REPLY_BYTES pile up,
+ * or whose pipe breaks under a write, is marked dead rather than losing single replies:
+ * its stall is reported as unbounded so the liveness check drops it and the client sees
+ * the pipe close. Ending a session discards its unwritten replies so the next client
+ * never sees them.
+ */
+public class ResponseChannel {
+    
+    private static final long UNBLOCK_WAIT_MS = 500;
+    
+    private final String pipeName;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    /** Replaced when a session ends; replies queued for an older one are discarded */
+    private volatile Backlog backlog = new Backlog();
+    private volatile FileChannel channel;
+    private volatile boolean writing;
+    private volatile boolean opening;
+    private volatile boolean shutdown;
+    /** When the writer last finished a reply, or when work arrived for an idle writer */
+    private volatile long progressNanos = System.nanoTime();
+    private Thread writerThread;
+    
+    public ResponseChannel(String pipeName) {
+        this.pipeName = pipeName;
+    }
+    
+    /**
+     * Queue a single response line
+     */
+    public void send(String line) {
+        sendFrame((line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Queue raw bytes, such as one binary frame
+     */
+    public void sendFrame(byte[] bytes) {
+        Backlog current = backlog;
+        if (shutdown || current.dead) {
+            return;
+        }
+        long queued = current.bytes.getAndAdd(bytes.length);
+        if (queued + bytes.length > ShimConnection.MAX_PENDING_REPLY_BYTES) {
+            markDead(current, "is not reading its replies (" + queued + " bytes queued)");
+            return;
+        }
+        if (queued == 0 && !writing) {
+            progressNanos = System.nanoTime();
+        }
+        queue.add(new Pending(bytes, current));
+        startWriter();
+    }
+    
+    private synchronized void startWriter() {
+        if (writerThread == null && !shutdown) {
+            writerThread = new Thread(this::writeLoop, "shim-reply-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+    
+    private void writeLoop() {
+        while (!shutdown) {
+            Pending next;
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                continue; // close() or shutdown() woke us
+            }
+            next.backlog.bytes.addAndGet(-next.bytes.length);
+            if (next.backlog != backlog || next.backlog.dead) {
+                continue;
+            }
+            writing = true;
+            try {
+                write(next);
+            } catch (IOException e) {
+                // Reader went away (broken pipe) or close() interrupted a stuck write
+                Thread.interrupted();
+                if (!shutdown && next.backlog == backlog) {
+                    markDead(next.backlog, "broke the pipe (" + e.getMessage() + ")");
+                }
+                closeChannel();
+            } finally {
+                writing = false;
+                progressNanos = System.nanoTime();
+            }
+        }
+        closeChannel();
+    }
+    
+    private void write(Pending reply) throws IOException {
+        FileChannel out = channel;
+        if (out == null) {
+            // Opening a FIFO for writing blocks until a reader is present
+            opening = true;
+            try {
+                out = FileChannel.open(Paths.get(pipeName), StandardOpenOption.WRITE);
+                channel = out;
+            } finally {
+                opening = false;
+            }
+            System.out.println("Opened response pipe: " + pipeName);
+            if (reply.backlog != backlog) {
+                // The session ended while we waited; the reader that let us in belongs to the next one
+                return;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(reply.bytes);
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+    
+    /**
+     * Give up on a session's replies; its client is reported stalled until the session ends
+     */
+    private void markDead(Backlog session, String reason) {
+        if (!session.dead) {
+            session.dead = true;
+            System.err.println("Client of " + pipeName + " " + reason + ", dropping its session");
+        }
+    }
+    
+    private void closeChannel() {
+        FileChannel current = channel;
+        channel = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // Closing a broken pipe may fail, nothing left to release
+            }
+        }
+    }
+    
+    /**
+     * End the client session: discard unwritten replies and close the pipe, interrupting
+     * a write the client stopped reading; the next reply opens it again
+     */
+    public void close() {
+        backlog = new Backlog();
+        queue.clear();
+        Thread writer;
+        synchronized (this) {
+            writer = writerThread;
+        }
+        if (writer != null && writing && !opening) {
+            // FileChannel is interruptible: this closes it and unblocks the write
+            writer.interrupt();
+        } else {
+            closeChannel();
+        }
+    }
+    
+    /**
+     * Close for good and stop the writer thread, also when it is waiting for a reader
+     * that never came
+     */
+    public void shutdown() {
+        shutdown = true;
+        close();
+        Thread writer;
+        synchronized (this) {
+            writer = writerThread;
+        }
+        if (writer == null) {
+            return;
+        }
+        writer.interrupt();
+        if (opening) {
+            // A blocked FIFO open only returns once a reader shows up, so be that reader
+            Thread unblocker = new Thread(() -> {
+                try (FileInputStream ignored = new FileInputStream(pipeName)) {
+                    // Opening is enough
+                } catch (IOException e) {
+                    // Pipe already gone
+                }
+            }, "shim-reply-unblock");
+            unblocker.setDaemon(true);
+            unblocker.start();
+            try {
+                // The caller may delete the pipe next, which would strand the writer for good
+                unblocker.join(UNBLOCK_WAIT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /**
+     * How long queued replies have waited without the writer finishing one, 0 if idle, or
+     * Long.MAX_VALUE once the session is dead
+     */
+    public long getStallMillis() {
+        Backlog current = backlog;
+        if (current.dead) {
+            return Long.MAX_VALUE;
+        }
+        if (current.bytes.get() == 0 && !writing) {
+            return 0;
+        }
+        return (System.nanoTime() - progressNanos) / 1_000_000;
+    }
+    
+    /**
+     * Check if the pipe is currently held open
+     */
+    public boolean isOpen() {
+        return channel != null;
+    }
+    
+    /**
+     * Unwritten bytes of one client session, counted apart from earlier sessions so their
+     * late accounting cannot skew it
+     */
+    private static final class Backlog {
+        final AtomicLong bytes = new AtomicLong();
+        volatile boolean dead;
+    }
+    
+    private static final class Pending {
+        final byte[] bytes;
+        final Backlog backlog;
+        
+        Pending(byte[] bytes, Backlog backlog) {
+            this.bytes = bytes;
+            this.backlog = backlog;
+        }
+    }
+}
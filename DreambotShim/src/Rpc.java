@@ -0,0 +1,40 @@
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a public method as callable over the shim's RPC pipe.
+ * RpcProcessor generates a switch-based dispatcher and a JSON schema from these methods.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Rpc {
+    
+    /**
+     * Scheduling class of a method; control runs before actions, actions before queries.
+     * Only actions invalidate cached query results, so shim bookkeeping that never touches
+     * the game (logging, task steps, jobs, local files) should be CONTROL.
+     */
+    enum Kind {
+        CONTROL, ACTION, QUERY
+    }
+    
+    /**
+     * cacheTtlMs value that keeps a result until the next game tick
+     */
+    long UNTIL_NEXT_TICK = -1;
+    
+    /**
+     * Methods that only read game state should be marked QUERY
+     */
+    Kind kind() default Kind.ACTION;
+    
+    /**
+     * How long a QUERY result may be reused for the same arguments, in milliseconds;
+     * 0 disables caching. Any action invalidates every cached result.
+     */
+    long cacheTtlMs() default 0;
+}
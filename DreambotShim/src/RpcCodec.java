@@ -0,0 +1,249 @@
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming codec for the line protocol. Requests are decoded token by token straight
+ * into RpcRequests with typed argument arrays, and responses are written token by token
+ * into a per-thread buffer, so neither side builds a Gson tree.
+ *
+ * Arguments decode as String, Boolean, Integer or Double (numbers with a '.' or an
+ * exponent), Long for integers outside the int range, null, or the raw JSON text of
+ * a nested array or object.
+ */
+public final class RpcCodec {
+    
+    /** Buffers that grew past this are dropped rather than kept per thread */
+    private static final int MAX_RETAINED_CHARS = 64 * 1024;
+    
+    private static final ThreadLocal<StringBuilderWriter> OUTPUT = ThreadLocal.withInitial(StringBuilderWriter::new);
+    private static final ThreadLocal<ArrayList<Object>> ARG_SCRATCH = ThreadLocal.withInitial(ArrayList::new);
+    private static final Object[] NO_ARGS = new Object[0];
+    
+    private RpcCodec() {
+    }
+    
+    /**
+     * Decode one request line
+     */
+    public static RpcRequest decode(String line) throws IOException {
+        try (JsonReader reader = new JsonReader(new StringReader(line))) {
+            return readCall(reader, true);
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Malformed request: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Encode a response as one line, without the trailing newline
+     */
+    public static String encode(RpcResponse response) {
+        StringBuilderWriter output = OUTPUT.get();
+        output.reset();
+        try {
+            JsonWriter writer = new JsonWriter(output);
+            writeResponse(writer, response);
+            writer.flush();
+        } catch (IOException e) {
+            // StringBuilderWriter never throws
+            throw new IllegalStateException(e);
+        }
+        String line = output.toString();
+        if (output.capacity() > MAX_RETAINED_CHARS) {
+            OUTPUT.remove();
+        }
+        return line;
+    }
+    
+    private static RpcRequest readCall(JsonReader reader, boolean allowBatch) throws IOException {
+        String id = null;
+        String method = null;
+        Object[] args = NO_ARGS;
+        List<RpcRequest> batch = null;
+        long timeoutMs = 0;
+        String idempotencyKey = null;
+        boolean progress = false;
+        
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "method":
+                    method = reader.nextString();
+                    break;
+                case "args":
+                    args = readArgs(reader);
+                    break;
+                case "timeoutMs":
+                    timeoutMs = reader.nextLong();
+                    break;
+                case "idempotencyKey":
+                    idempotencyKey = reader.nextString();
+                    break;
+                case "progress":
+                    progress = reader.nextBoolean();
+                    break;
+                case "batch":
+                    if (!allowBatch) {
+                        throw new IOException("Batches cannot be nested");
+                    }
+                    batch = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        batch.add(readCall(reader, false));
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        
+        if (batch != null) {
+            method = PipeManager.BATCH_METHOD;
+        }
+        return new RpcRequest(id, method, args, batch, timeoutMs, idempotencyKey, progress);
+    }
+    
+    private static Object[] readArgs(JsonReader reader) throws IOException {
+        ArrayList<Object> scratch = ARG_SCRATCH.get();
+        scratch.clear();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            scratch.add(readArg(reader));
+        }
+        reader.endArray();
+        Object[] args = scratch.isEmpty() ? NO_ARGS : scratch.toArray();
+        scratch.clear();
+        return args;
+    }
+    
+    private static Object readArg(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case STRING:
+                return reader.nextString();
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NUMBER:
+                return parseNumber(reader.nextString());
+            case NULL:
+                reader.nextNull();
+                return null;
+            default:
+                // Nested arrays and objects are passed through as their JSON text
+                return JsonParser.parseReader(reader).toString();
+        }
+    }
+    
+    private static Object parseNumber(String number) {
+        if (number.indexOf('.') >= 0 || number.indexOf('e') >= 0 || number.indexOf('E') >= 0) {
+            return Double.parseDouble(number);
+        }
+        long value = Long.parseLong(number);
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return (int) value;
+        }
+        return value;
+    }
+    
+    private static void writeResponse(JsonWriter writer, RpcResponse response) throws IOException {
+        writer.beginObject();
+        if (response.getId() != null) {
+            writer.name("id").value(response.getId());
+        }
+        writer.name("method").value(response.getMethod());
+        writer.name("status").value(response.getStatus());
+        if (response.isBatch()) {
+            writer.name("results").beginArray();
+            for (RpcResponse result : response.getResults()) {
+                writeResponse(writer, result);
+            }
+            writer.endArray();
+        } else if (response.isProgress()) {
+            writer.name("progress").beginObject();
+            for (Map.Entry<String, Object> value : response.getProgress().entrySet()) {
+                writeResult(writer.name(value.getKey()), value.getValue());
+            }
+            writer.endObject();
+        } else if (response.getError() != null) {
+            writer.name("error").value(response.getError());
+        } else {
+            writeResult(writer.name("result"), response.getResult());
+        }
+        writer.endObject();
+    }
+    
+    private static void writeResult(JsonWriter writer, Object result) throws IOException {
+        if (result instanceof Boolean) {
+            writer.value((Boolean) result);
+        } else if (result instanceof Number) {
+            writer.value((Number) result);
+        } else {
+            writer.value(String.valueOf(result));
+        }
+    }
+    
+    /**
+     * Writer over a StringBuilder that is reset and reused between responses
+     */
+    private static final class StringBuilderWriter extends Writer {
+        private final StringBuilder buffer = new StringBuilder(256);
+        
+        void reset() {
+            buffer.setLength(0);
+        }
+        
+        int capacity() {
+            return buffer.capacity();
+        }
+        
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            buffer.append(chars, offset, length);
+        }
+        
+        @Override
+        public void write(int c) {
+            buffer.append((char) c);
+        }
+        
+        @Override
+        public void write(String str, int offset, int length) {
+            buffer.append(str, offset, offset + length);
+        }
+        
+        @Override
+        public Writer append(CharSequence csq) {
+            buffer.append(csq);
+            return this;
+        }
+        
+        @Override
+        public void flush() {
+        }
+        
+        @Override
+        public void close() {
+        }
+        
+        @Override
+        public String toString() {
+            return buffer.toString();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+import java.util.List;
+
+/**
+ * Dispatches a method call decoded from the pipe to the API wrapper
+ */
+public interface RpcDispatcher {
+    
+    /**
+     * Invoke the method matching name and arguments.
+     * Throws NoSuchMethodException if no exposed method matches.
+     */
+    Object invoke(String methodName, Object[] args) throws Throwable;
+    
+    /**
+     * Scheduling kind declared on the method, or null if no exposed method has this name
+     */
+    Rpc.Kind kindOf(String methodName);
+    
+    /**
+     * Result cache TTL declared on the method, or 0 if its results are not cached
+     */
+    long cacheTtlOf(String methodName);
+    
+    /**
+     * Names of all exposed methods in sorted order, used as the binary method table
+     */
+    List<String> getMethodNames();
+}
@@ -0,0 +1,494 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only journal of every request and reply, for post-mortems and for replaying
+ * real traffic against the dispatcher (bench/JournalReplay). Records are appended to a
+ * memory-mapped segment file; when a segment is full the next one is started and the
+ * oldest segments beyond the retention count are deleted.
+ * <pre>
+ * segment  = int32 magic "RJNL", int32 version, int64 segment number, int64 created (epoch ms),
+ *            record*, zero bytes to the end of the file
+ * record   = int32 length of the rest (0 = end of segment), u8 type, int64 call number,
+ *            int64 timestamp (epoch micros), value thread, value session, value request id, body
+ * REQUEST  (1) body = int32 timeoutMs, u16 call count, (value method, u8 arg count, value*)*
+ * REPLY    (2) body = value method, value status, int64 latency micros, value result or error
+ * </pre>
+ * All integers are big-endian and values use BinaryCodec's tagged encoding. A single
+ * call is a REQUEST with one call; a batch has method "batch" and one entry per call.
+ * A reply carries the call number of its request. Call numbers carry on from the
+ * segments left by earlier runs, so they stay unique across the whole directory.
+ */
+public class RpcJournal {
+    
+    public static final int MAGIC = 0x524A4E4C;
+    public static final int VERSION = 1;
+    public static final byte TYPE_REQUEST = 1;
+    public static final byte TYPE_REPLY = 2;
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".rjl";
+    private static final int HEADER_BYTES = 24;
+    /** Long results are cut to this many characters so a record always fits a segment */
+    private static final int MAX_STRING_CHARS = 64 * 1024;
+    
+    private static final ThreadLocal<RecordBuffer> SCRATCH = ThreadLocal.withInitial(RecordBuffer::new);
+    
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicLong nextCall = new AtomicLong();
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long segmentNumber;
+    private long bytesWritten;
+    
+    public RpcJournal(Path directory, int segmentBytes, int maxSegments) {
+        this.directory = directory;
+        this.segmentBytes = Math.max(64 * 1024, segmentBytes);
+        this.maxSegments = Math.max(1, maxSegments);
+    }
+    
+    /**
+     * Create the directory and start a new segment after any left by earlier runs,
+     * numbering calls on from the last one they recorded
+     */
+    public synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> existing = listSegments(directory);
+        segmentNumber = existing.isEmpty() ? 0 : segmentNumber(existing.get(existing.size() - 1));
+        nextCall.set(lastCall(existing));
+        startSegment();
+        System.out.println("RPC journal writing to " + directory);
+    }
+    
+    /**
+     * Journal a request as it is accepted
+     */
+    public void recordRequest(String sessionId, RpcRequest request) {
+        long call = nextCall.incrementAndGet();
+        if (request.getId() != null) {
+            pending.put(key(sessionId, request.getId()), new Pending(call, System.nanoTime()));
+        }
+        RecordBuffer buffer = SCRATCH.get();
+        try {
+            DataOutputStream out = buffer.begin(TYPE_REQUEST, call, sessionId, request.getId());
+            out.writeInt((int) Math.min(Integer.MAX_VALUE, request.getTimeoutMs()));
+            List<RpcRequest> calls = request.isBatch() ? request.getBatch() : Collections.singletonList(request);
+            out.writeShort(calls.size());
+            for (RpcRequest entry : calls) {
+                BinaryCodec.writeValue(out, entry.getMethod());
+                Object[] args = entry.getArgs() != null ? entry.getArgs() : new Object[0];
+                int count = Math.min(args.length, 255);
+                out.writeByte(count);
+                for (int i = 0; i < count; i++) {
+                    BinaryCodec.writeValue(out, cap(args[i]));
+                }
+            }
+            append(buffer.finish());
+        } catch (IOException e) {
+            dropped.incrementAndGet();
+        }
+    }
+    
+    /**
+     * Journal a reply with the latency since its request was journaled; replies to
+     * requests that were never journaled, like the hello handshake, are skipped
+     */
+    public void recordReply(String sessionId, RpcResponse response) {
+        if (response.getId() == null) {
+            return;
+        }
+        Pending request = pending.remove(key(sessionId, response.getId()));
+        if (request == null) {
+            return;
+        }
+        long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - request.startNanos);
+        RecordBuffer buffer = SCRATCH.get();
+        try {
+            DataOutputStream out = buffer.begin(TYPE_REPLY, request.call, sessionId, response.getId());
+            BinaryCodec.writeValue(out, response.getMethod());
+            BinaryCodec.writeValue(out, response.getStatus());
+            out.writeLong(latencyMicros);
+            Object value;
+            if (response.isBatch()) {
+                value = RpcCodec.encode(response);
+            } else {
+                value = RpcResponse.STATUS_OK.equals(response.getStatus()) ? response.getResult() : response.getError();
+            }
+            BinaryCodec.writeValue(out, cap(value));
+            append(buffer.finish());
+        } catch (IOException e) {
+            dropped.incrementAndGet();
+        }
+    }
+    
+    /**
+     * Forget the unanswered requests of a closed session
+     */
+    public void forgetSession(String sessionId) {
+        String prefix = sessionId + "/";
+        pending.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+    
+    /**
+     * Flush the current segment and unmap it
+     */
+    public synchronized void close() {
+        if (segment != null) {
+            segment.force();
+            segment = null;
+        }
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing RPC journal: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Record counts and the segment being written, for the shimStats method
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("directory", directory.toString());
+        stats.put("segment", segmentNumber);
+        stats.put("records", records.get());
+        stats.put("bytes", bytesWritten);
+        stats.put("dropped", dropped.get());
+        stats.put("pending", pending.size());
+        return stats;
+    }
+    
+    private synchronized void append(ByteBuffer record) throws IOException {
+        if (segment == null) {
+            dropped.incrementAndGet();
+            return;
+        }
+        // Leave room for the zero length that ends the segment
+        if (record.remaining() + 4 > segment.remaining()) {
+            if (record.remaining() + 4 > segmentBytes - HEADER_BYTES) {
+                dropped.incrementAndGet();
+                return;
+            }
+            segment.force();
+            channel.close();
+            startSegment();
+        }
+        bytesWritten += record.remaining();
+        segment.put(record);
+        records.incrementAndGet();
+    }
+    
+    private void startSegment() throws IOException {
+        segmentNumber++;
+        Path path = directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segment.putInt(MAGIC);
+        segment.putInt(VERSION);
+        segment.putLong(segmentNumber);
+        segment.putLong(System.currentTimeMillis());
+        deleteOldSegments();
+    }
+    
+    private void deleteOldSegments() throws IOException {
+        List<Path> segments = listSegments(directory);
+        for (int i = 0; i < segments.size() - maxSegments; i++) {
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+    
+    private static String key(String sessionId, String requestId) {
+        return sessionId + "/" + requestId;
+    }
+    
+    private static Object cap(Object value) {
+        if (value instanceof String && ((String) value).length() > MAX_STRING_CHARS) {
+            return ((String) value).substring(0, MAX_STRING_CHARS);
+        }
+        return value;
+    }
+    
+    /**
+     * Segment files of a journal directory, oldest first
+     */
+    static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                segments.add(file);
+            }
+        }
+        segments.sort(null);
+        return segments;
+    }
+    
+    /**
+     * Highest call number in the newest two segments that hold records. Calls are
+     * numbered before they are appended, so the highest may land one segment back.
+     */
+    private static long lastCall(List<Path> segments) throws IOException {
+        long last = 0;
+        int found = 0;
+        for (int i = segments.size() - 1; i >= 0 && found < 2; i--) {
+            long segmentLast = lastCall(segments.get(i));
+            if (segmentLast > 0) {
+                last = Math.max(last, segmentLast);
+                found++;
+            }
+        }
+        return last;
+    }
+    
+    /**
+     * Highest call number in one segment, reading only the record headers; 0 if it has none
+     */
+    private static long lastCall(Path path) throws IOException {
+        long last = 0;
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (file.size() < HEADER_BYTES) {
+                return 0;
+            }
+            MappedByteBuffer in = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            if (in.getInt(0) != MAGIC) {
+                return 0;
+            }
+            int position = HEADER_BYTES;
+            while (position + 4 <= in.limit()) {
+                int length = in.getInt(position);
+                // A record is at least its type and call number
+                if (length < 9 || length > in.limit() - position - 4) {
+                    break;
+                }
+                last = Math.max(last, in.getLong(position + 5));
+                position += 4 + length;
+            }
+        }
+        return last;
+    }
+    
+    private static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+    
+    /**
+     * Read every record of a journal directory in order; a torn record at the end of a
+     * segment (the shim died mid-write) ends that segment
+     */
+    public static List<Entry> read(Path directory) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (Path path : listSegments(directory)) {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (in.remaining() < HEADER_BYTES || in.getInt() != MAGIC) {
+                System.err.println("Skipping " + path + ": not a journal segment");
+                continue;
+            }
+            if (in.getInt() != VERSION) {
+                System.err.println("Skipping " + path + ": unsupported journal version");
+                continue;
+            }
+            in.position(HEADER_BYTES);
+            while (in.remaining() >= 4) {
+                int length = in.getInt();
+                if (length <= 0 || length > in.remaining()) {
+                    break;
+                }
+                ByteBuffer record = in.slice();
+                record.limit(length);
+                in.position(in.position() + length);
+                try {
+                    entries.add(Entry.decode(record));
+                } catch (IOException | BufferUnderflowException e) {
+                    System.err.println("Skipping damaged record in " + path);
+                }
+            }
+        }
+        return entries;
+    }
+    
+    /**
+     * One decoded journal record
+     */
+    public static final class Entry {
+        private byte type;
+        private long call;
+        private long timestampMicros;
+        private String thread;
+        private String session;
+        private String requestId;
+        private long timeoutMs;
+        private final List<String> methods = new ArrayList<>();
+        private final List<Object[]> args = new ArrayList<>();
+        private String status;
+        private long latencyMicros;
+        private Object value;
+        
+        static Entry decode(ByteBuffer in) throws IOException {
+            Entry entry = new Entry();
+            entry.type = in.get();
+            entry.call = in.getLong();
+            entry.timestampMicros = in.getLong();
+            entry.thread = (String) BinaryCodec.readValue(in);
+            entry.session = (String) BinaryCodec.readValue(in);
+            entry.requestId = (String) BinaryCodec.readValue(in);
+            if (entry.type == TYPE_REQUEST) {
+                entry.timeoutMs = in.getInt();
+                int calls = in.getShort() & 0xFFFF;
+                for (int i = 0; i < calls; i++) {
+                    entry.methods.add((String) BinaryCodec.readValue(in));
+                    Object[] callArgs = new Object[in.get() & 0xFF];
+                    for (int a = 0; a < callArgs.length; a++) {
+                        callArgs[a] = BinaryCodec.readValue(in);
+                    }
+                    entry.args.add(callArgs);
+                }
+            } else if (entry.type == TYPE_REPLY) {
+                entry.methods.add((String) BinaryCodec.readValue(in));
+                entry.status = (String) BinaryCodec.readValue(in);
+                entry.latencyMicros = in.getLong();
+                entry.value = BinaryCodec.readValue(in);
+            } else {
+                throw new IOException("Unknown record type " + entry.type);
+            }
+            return entry;
+        }
+        
+        public boolean isRequest() {
+            return type == TYPE_REQUEST;
+        }
+        
+        /**
+         * Call number shared by a request and its reply
+         */
+        public long getCall() {
+            return call;
+        }
+        
+        public long getTimestampMicros() {
+            return timestampMicros;
+        }
+        
+        public String getThread() {
+            return thread;
+        }
+        
+        public String getSession() {
+            return session;
+        }
+        
+        public String getRequestId() {
+            return requestId;
+        }
+        
+        public long getTimeoutMs() {
+            return timeoutMs;
+        }
+        
+        /**
+         * The request's method, "batch" for a batch, or the replied method
+         */
+        public String getMethod() {
+            if (isRequest() && methods.size() == 1) {
+                return methods.get(0);
+            }
+            return isRequest() ? PipeManager.BATCH_METHOD : methods.get(0);
+        }
+        
+        /**
+         * Method of each call in a request, one for a single call
+         */
+        public List<String> getCallMethods() {
+            return methods;
+        }
+        
+        /**
+         * Arguments of each call in a request
+         */
+        public List<Object[]> getCallArgs() {
+            return args;
+        }
+        
+        public String getStatus() {
+            return status;
+        }
+        
+        public long getLatencyMicros() {
+            return latencyMicros;
+        }
+        
+        /**
+         * The reply's result, or its error for a failed call
+         */
+        public Object getValue() {
+            return value;
+        }
+    }
+    
+    private static final class Pending {
+        final long call;
+        final long startNanos;
+        
+        Pending(long call, long startNanos) {
+            this.call = call;
+            this.startNanos = startNanos;
+        }
+    }
+    
+    /**
+     * Per-thread record encoder, reused across records
+     */
+    private static final class RecordBuffer extends ByteArrayOutputStream {
+        private final DataOutputStream out = new DataOutputStream(this);
+        
+        RecordBuffer() {
+            super(256);
+        }
+        
+        DataOutputStream begin(byte type, long call, String sessionId, String requestId) throws IOException {
+            reset();
+            out.writeInt(0);
+            out.writeByte(type);
+            out.writeLong(call);
+            out.writeLong(ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now()));
+            BinaryCodec.writeValue(out, Thread.currentThread().getName());
+            BinaryCodec.writeValue(out, sessionId);
+            BinaryCodec.writeValue(out, requestId);
+            return out;
+        }
+        
+        ByteBuffer finish() {
+            ByteBuffer record = ByteBuffer.wrap(buf, 0, count);
+            record.putInt(0, count - 4);
+            return record;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import java.util.List;
+
+/**
+ * A decoded request envelope: one call with typed arguments, or a batch of calls
+ */
+public final class RpcRequest {
+    
+    private final String id;
+    private final String method;
+    private final Object[] args;
+    private final List<RpcRequest> batch;
+    private final long timeoutMs;
+    private final String idempotencyKey;
+    private final boolean progress;
+    
+    RpcRequest(String id, String method, Object[] args, List<RpcRequest> batch, long timeoutMs,
+               String idempotencyKey, boolean progress) {
+        this.id = id;
+        this.method = method;
+        this.args = args;
+        this.batch = batch;
+        this.timeoutMs = timeoutMs;
+        this.idempotencyKey = idempotencyKey;
+        this.progress = progress;
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    /**
+     * Method name, "batch" for a batch envelope, or null if the call named none
+     */
+    public String getMethod() {
+        return method;
+    }
+    
+    public Object[] getArgs() {
+        return args;
+    }
+    
+    public boolean isBatch() {
+        return batch != null;
+    }
+    
+    public List<RpcRequest> getBatch() {
+        return batch;
+    }
+    
+    /**
+     * Deadline in milliseconds, or 0 when the client set none
+     */
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+    
+    /**
+     * Client-chosen key that makes retries of this call return the first result, or null
+     */
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+    
+    /**
+     * Whether the client wants progress frames before the final reply
+     */
+    public boolean wantsProgress() {
+        return progress;
+    }
+}
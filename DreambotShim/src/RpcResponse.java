@@ -0,0 +1,97 @@
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A reply to one call, or to a whole batch, ready for RpcCodec to encode.
+ * Progress frames are interim replies that precede a call's final reply.
+ */
+public final class RpcResponse {
+    
+    public static final String STATUS_OK = "ok";
+    public static final String STATUS_ERROR = "error";
+    public static final String STATUS_TIMEOUT = "timeout";
+    public static final String STATUS_BUSY = "busy";
+    public static final String STATUS_PROGRESS = "progress";
+    
+    private final String id;
+    private final String method;
+    private final String status;
+    private final Object result;
+    private final String error;
+    private final List<RpcResponse> results;
+    
+    private RpcResponse(String id, String method, String status, Object result, String error, List<RpcResponse> results) {
+        this.id = id;
+        this.method = method;
+        this.status = status;
+        this.result = result;
+        this.error = error;
+        this.results = results;
+    }
+    
+    public static RpcResponse ok(String id, String method, Object result) {
+        return new RpcResponse(id, method, STATUS_OK, result, null, null);
+    }
+    
+    public static RpcResponse error(String id, String method, String error) {
+        return new RpcResponse(id, method, STATUS_ERROR, null, error, null);
+    }
+    
+    /**
+     * A failure with a status other than "error", such as timeout or busy
+     */
+    public static RpcResponse failure(String id, String method, String status, String error) {
+        return new RpcResponse(id, method, status, null, error, null);
+    }
+    
+    public static RpcResponse batch(String id, String method, List<RpcResponse> results) {
+        return new RpcResponse(id, method, STATUS_OK, null, null, results);
+    }
+    
+    /**
+     * An interim progress frame; the values are primitives keyed by name
+     */
+    public static RpcResponse progress(String id, String method, Map<String, Object> values) {
+        return new RpcResponse(id, method, STATUS_PROGRESS, values, null, null);
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public String getMethod() {
+        return method;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public Object getResult() {
+        return result;
+    }
+    
+    public String getError() {
+        return error;
+    }
+    
+    public boolean isBatch() {
+        return results != null;
+    }
+    
+    public boolean isProgress() {
+        return STATUS_PROGRESS.equals(status);
+    }
+    
+    /**
+     * Values of a progress frame
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getProgress() {
+        return isProgress() ? (Map<String, Object>) result : null;
+    }
+    
+    public List<RpcResponse> getResults() {
+        return results;
+    }
+}
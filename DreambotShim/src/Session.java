@@ -0,0 +1,130 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One connected client of the shim. Every connection gets its own session with an id
+ * (returned by the hello handshake), its own in-flight window and request counters;
+ * the request scheduler takes turns between sessions so one busy client cannot
+ * starve the others. A client that offers "heartbeat" in its hello is expected to
+ * keep talking and is dropped once it goes silent for too long.
+ */
+public class Session {
+    
+    private static final AtomicInteger nextId = new AtomicInteger();
+    
+    private final String id;
+    private final ShimConnection connection;
+    private final long connectedAtMillis = System.currentTimeMillis();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong ok = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final String resumeToken = UUID.randomUUID().toString();
+    private volatile long lastHeardNanos = System.nanoTime();
+    private volatile boolean heartbeat;
+    
+    public Session(ShimConnection connection) {
+        this.id = "s" + nextId.incrementAndGet();
+        this.connection = connection;
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    /**
+     * Secret a reconnecting client presents in its hello to take this session's
+     * subscriptions over
+     */
+    public String getResumeToken() {
+        return resumeToken;
+    }
+    
+    /**
+     * Note that the client sent something, a heartbeat or a request
+     */
+    public void touch() {
+        lastHeardNanos = System.nanoTime();
+    }
+    
+    /**
+     * Time since the client last sent anything
+     */
+    public long getSilenceMillis() {
+        return (System.nanoTime() - lastHeardNanos) / 1_000_000;
+    }
+    
+    /**
+     * Check if the client asked for heartbeats, and so promised to send them
+     */
+    public boolean isHeartbeat() {
+        return heartbeat;
+    }
+    
+    public void setHeartbeat(boolean heartbeat) {
+        this.heartbeat = heartbeat;
+    }
+    
+    public ShimConnection getConnection() {
+        return connection;
+    }
+    
+    /**
+     * Unfinished non-control requests; PipeManager holds this below its window size
+     */
+    public AtomicInteger getInFlight() {
+        return inFlight;
+    }
+    
+    /**
+     * Count a request accepted from this client
+     */
+    public void recordRequest() {
+        requests.incrementAndGet();
+    }
+    
+    /**
+     * Count a reply sent to this client by its status
+     */
+    public void recordReply(String status) {
+        switch (status) {
+            case RpcResponse.STATUS_OK:
+                ok.incrementAndGet();
+                break;
+            case RpcResponse.STATUS_TIMEOUT:
+                timeouts.incrementAndGet();
+                break;
+            case RpcResponse.STATUS_BUSY:
+                rejected.incrementAndGet();
+                break;
+            default:
+                errors.incrementAndGet();
+        }
+    }
+    
+    /**
+     * Counters for this session, for the shimStats method
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("id", id);
+        stats.put("connection", connection.getId());
+        stats.put("format", connection.isBinary() ? BinaryCodec.FORMAT_NAME : "json");
+        stats.put("connectedMs", System.currentTimeMillis() - connectedAtMillis);
+        stats.put("inFlight", inFlight.get());
+        stats.put("requests", requests.get());
+        stats.put("ok", ok.get());
+        stats.put("errors", errors.get());
+        stats.put("timeouts", timeouts.get());
+        stats.put("rejected", rejected.get());
+        stats.put("heartbeat", heartbeat);
+        stats.put("silentMs", getSilenceMillis());
+        stats.put("writeStallMs", connection.getWriteStallMillis());
+        return stats;
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * A connected client of the shim that replies can be written to
+ */
+public interface ShimConnection {
+    
+    /** Replies buffered for a client that is not reading before it is treated as gone */
+    int MAX_PENDING_REPLY_BYTES = 8 * 1024 * 1024;
+    
+    /**
+     * Identifier of this connection, unique within the shim
+     */
+    String getId();
+    
+    /**
+     * Queue or write a single reply line to the client
+     */
+    void send(String line);
+    
+    /**
+     * Queue or write one complete binary frame, length prefix included
+     */
+    void sendFrame(byte[] frame);
+    
+    /**
+     * Check if the client negotiated binary frames
+     */
+    boolean isBinary();
+    
+    /**
+     * Read and write binary frames from now on; called on the transport's reader
+     * thread while it handles the hello request, so the next bytes read are framed
+     */
+    void switchToBinary();
+    
+    /**
+     * How long queued replies have been waiting without the client reading any of
+     * them, or 0 if nothing is waiting
+     */
+    long getWriteStallMillis();
+    
+    /**
+     * Check if the client is still connected
+     */
+    boolean isOpen();
+    
+    /**
+     * Drop the connection
+     */
+    void close();
+}
@@ -0,0 +1,70 @@
+/**
+ * Identity of one shim on the host and the endpoint paths derived from it, so several
+ * DreamBot clients can run side by side. The "default" instance keeps the original
+ * /tmp/dreambot_shim_* paths; any other id gets /tmp/dreambot_shim_<id>_* paths.
+ */
+public final class ShimInstance {
+    
+    public static final String DEFAULT_ID = "default";
+    /** System property naming the instance, for the shim and for Java clients */
+    public static final String INSTANCE_PROPERTY = "dreambot.shim.instance";
+    private static final String PATH_PREFIX = "/tmp/dreambot_shim";
+    private static final int MAX_ID_LENGTH = 64;
+    
+    private final String id;
+    
+    public ShimInstance(String id) {
+        this.id = sanitize(id);
+    }
+    
+    /**
+     * Reduce an account or profile name to characters that are safe in a file name
+     */
+    static String sanitize(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return DEFAULT_ID;
+        }
+        String cleaned = name.trim().replaceAll("[^A-Za-z0-9_-]", "_");
+        return cleaned.length() > MAX_ID_LENGTH ? cleaned.substring(0, MAX_ID_LENGTH) : cleaned;
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public boolean isDefault() {
+        return DEFAULT_ID.equals(id);
+    }
+    
+    public String getPipeName() {
+        return path("_pipe");
+    }
+    
+    public String getResponsePipeName() {
+        return path("_response_pipe");
+    }
+    
+    public String getSocketName() {
+        return path(".sock");
+    }
+    
+    public String getStatePath() {
+        return path("_state.bin");
+    }
+    
+    /**
+     * Directory of the RPC journal; kept when the shim dies, for post-mortems
+     */
+    public String getJournalDirectory() {
+        return path("_journal");
+    }
+    
+    private String path(String suffix) {
+        return isDefault() ? PATH_PREFIX + suffix : PATH_PREFIX + "_" + id + suffix;
+    }
+    
+    @Override
+    public String toString() {
+        return id;
+    }
+}
@@ -0,0 +1,60 @@
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Transport that accepts clients and delivers their request lines, or binary frames
+ * once negotiated, to PipeManager
+ */
+public interface ShimTransport {
+    
+    /**
+     * Callbacks from a transport to the dispatcher
+     */
+    interface Listener {
+        
+        /**
+         * A complete request line arrived from a client
+         */
+        void onRequest(ShimConnection connection, String line);
+        
+        /**
+         * A complete binary frame arrived from a client; the buffer holds the frame
+         * without its length prefix
+         */
+        void onFrame(ShimConnection connection, ByteBuffer frame);
+        
+        /**
+         * A client connected
+         */
+        default void onConnect(ShimConnection connection) {
+        }
+        
+        /**
+         * A client disconnected
+         */
+        default void onDisconnect(ShimConnection connection) {
+        }
+    }
+    
+    /**
+     * Create the endpoint and start accepting clients
+     */
+    void start(Listener listener) throws IOException;
+    
+    /**
+     * Stop accepting clients, close connections and remove the endpoint
+     */
+    void stop();
+    
+    /**
+     * Human-readable endpoint description, e.g. the pipe or socket path
+     */
+    String getEndpoint();
+    
+    /**
+     * Paths this transport serves, by the names clients look up in the instance registry
+     */
+    Map<String, String> getRegistryEndpoints();
+}
@@ -0,0 +1,82 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent read-only calls: the first caller for a method and
+ * argument list runs it, and callers arriving while it runs wait for and share its
+ * result instead of scanning the game again.
+ */
+public class SingleFlight {
+    
+    private final Map<CallKey, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> coalesced = new ConcurrentHashMap<>();
+    private final LongAdder leaders = new LongAdder();
+    
+    /**
+     * Run the loader, or join an identical call from the same epoch that is already running
+     */
+    public Object execute(String method, Object[] args, long epoch, Supplier<Object> loader) {
+        CallKey key = new CallKey(method, args, epoch);
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.computeIfAbsent(method, m -> new LongAdder()).increment();
+            return await(method, existing);
+        }
+        
+        leaders.increment();
+        try {
+            Object value = loader.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+    
+    /**
+     * Leader and coalesced call counts, for the shimStats method
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inFlight", inFlight.size());
+        stats.put("leaders", leaders.sum());
+        Map<String, Long> perMethod = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : coalesced.entrySet()) {
+            perMethod.put(entry.getKey(), entry.getValue().sum());
+        }
+        stats.put("coalesced", perMethod);
+        return stats;
+    }
+    
+    /**
+     * Wait for the leader's result, no longer than this request's own deadline
+     */
+    private static Object await(String method, CompletableFuture<Object> flight) {
+        try {
+            RequestContext context = RequestContext.current();
+            if (context != null) {
+                return flight.get(Math.max(1, context.remainingMillis()), TimeUnit.MILLISECONDS);
+            }
+            return flight.get();
+        } catch (ExecutionException e) {
+            return "Error executing method '" + method + "': " + e.getCause().getMessage();
+        } catch (TimeoutException e) {
+            return "Error executing method '" + method + "': deadline passed waiting for an identical call";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Error executing method '" + method + "': interrupted";
+        }
+    }
+}
@@ -19,6 +19,7 @@ public class TaskManager {
         currentStep = step;
         stepStartTime = System.currentTimeMillis();
         Logger.log("Python->Java: Current step: " + step);
+        Job.reportProgress("step", step);
     }
     
     /**
@@ -0,0 +1,354 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unix domain socket transport (JDK 16+). Full duplex, any number of clients, all
+ * served by one selector thread with non-blocking reads and queued writes.
+ * Uses the same newline-delimited JSON as the FIFO transport, or binary frames
+ * once a client negotiates them. A client that lets more than
+ * ShimConnection.MAX_PENDING_REPLY_BYTES of replies pile up is disconnected.
+ */
+public class UnixSocketTransport implements ShimTransport {
+    
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int FRAME_HEADER_BYTES = 4;
+    
+    private final Path socketPath;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private Listener listener;
+    
+    public UnixSocketTransport(String socketPath) {
+        this.socketPath = Paths.get(socketPath);
+    }
+    
+    @Override
+    public void start(Listener listener) throws IOException {
+        this.listener = listener;
+        
+        // A socket file left behind by a previous run would make bind fail
+        Files.deleteIfExists(socketPath);
+        
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        
+        running.set(true);
+        selectorThread = new Thread(this::selectLoop, "shim-socket-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        System.out.println("Listening for method calls on socket " + socketPath);
+    }
+    
+    private void selectLoop() {
+        ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        while (running.get()) {
+            try {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        SocketConnection connection = (SocketConnection) key.attachment();
+                        if (key.isReadable()) {
+                            connection.read(readBuffer);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                    }
+                }
+                // Connections that queued replies since the last select want OP_WRITE
+                for (SelectionKey key : selector.keys()) {
+                    if (key.isValid() && key.attachment() instanceof SocketConnection) {
+                        ((SocketConnection) key.attachment()).updateInterest();
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                break; // stop() closed the selector
+            } catch (IOException e) {
+                if (running.get()) {
+                    System.err.println("Socket selector error: " + e.getMessage());
+                }
+            }
+        }
+        System.out.println("Stopped listening on socket " + socketPath);
+    }
+    
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        SocketConnection connection = new SocketConnection("socket:" + connectionCount.incrementAndGet(), channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        System.out.println("Client connected: " + connection.getId());
+        listener.onConnect(connection);
+    }
+    
+    @Override
+    public void stop() {
+        running.set(false);
+        if (selector != null) {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof SocketConnection) {
+                    ((SocketConnection) key.attachment()).close();
+                }
+            }
+            selector.wakeup();
+        }
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+            if (selector != null) {
+                selector.close();
+            }
+            Files.deleteIfExists(socketPath);
+            System.out.println("Socket transport stopped and cleaned up");
+        } catch (IOException e) {
+            System.err.println("Error during socket cleanup: " + e.getMessage());
+        }
+    }
+    
+    @Override
+    public String getEndpoint() {
+        return socketPath.toString();
+    }
+    
+    @Override
+    public Map<String, String> getRegistryEndpoints() {
+        return Map.of("socket", socketPath.toString());
+    }
+    
+    /**
+     * One socket client: assembles request lines or frames from reads and queues replies for writing
+     */
+    private class SocketConnection implements ShimConnection {
+        private final String id;
+        private final SocketChannel channel;
+        private final Queue<ByteBuffer> pendingWrites = new ConcurrentLinkedQueue<>();
+        private final AtomicLong pendingBytes = new AtomicLong();
+        /** When the socket last accepted bytes, or when replies arrived for an idle connection */
+        private volatile long progressNanos = System.nanoTime();
+        private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        private volatile boolean binary;
+        private ByteBuffer partialFrame = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private SelectionKey key;
+        
+        SocketConnection(String id, SocketChannel channel) {
+            this.id = id;
+            this.channel = channel;
+        }
+        
+        @Override
+        public String getId() {
+            return id;
+        }
+        
+        @Override
+        public void send(String line) {
+            sendFrame((line + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        
+        @Override
+        public void sendFrame(byte[] frame) {
+            if (closed.get()) {
+                return;
+            }
+            long queued = pendingBytes.getAndAdd(frame.length);
+            if (queued + frame.length > MAX_PENDING_REPLY_BYTES) {
+                System.err.println("Client " + id + " is not reading its replies (" + queued + " bytes queued), closing");
+                close();
+                return;
+            }
+            if (queued == 0) {
+                progressNanos = System.nanoTime();
+            }
+            pendingWrites.add(ByteBuffer.wrap(frame));
+            // The selector thread registers OP_WRITE and drains the queue
+            selector.wakeup();
+        }
+        
+        @Override
+        public long getWriteStallMillis() {
+            return pendingBytes.get() == 0 ? 0 : (System.nanoTime() - progressNanos) / 1_000_000;
+        }
+        
+        @Override
+        public boolean isBinary() {
+            return binary;
+        }
+        
+        @Override
+        public void switchToBinary() {
+            binary = true;
+        }
+        
+        @Override
+        public boolean isOpen() {
+            return !closed.get();
+        }
+        
+        @Override
+        public void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Already closed by the peer
+            }
+            System.out.println("Client disconnected: " + id);
+            listener.onDisconnect(this);
+        }
+        
+        /**
+         * Read available bytes and hand every complete line or frame to the listener (selector thread only)
+         */
+        void read(ByteBuffer buffer) {
+            buffer.clear();
+            int count;
+            try {
+                count = channel.read(buffer);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (count < 0) {
+                close();
+                return;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                if (binary) {
+                    // The hello request switched this connection mid-read
+                    readFrames(buffer);
+                    return;
+                }
+                byte b = buffer.get();
+                if (b == '\n') {
+                    String line = new String(partialLine.toByteArray(), StandardCharsets.UTF_8).trim();
+                    partialLine.reset();
+                    if (!line.isEmpty()) {
+                        listener.onRequest(this, line);
+                    }
+                } else {
+                    partialLine.write(b);
+                    if (partialLine.size() > BinaryCodec.MAX_FRAME_BYTES) {
+                        // Same bound as a binary frame, so a client that never sends a newline can't grow this forever
+                        System.err.println("Request line from " + id + " exceeds " + BinaryCodec.MAX_FRAME_BYTES + " bytes, closing");
+                        close();
+                        return;
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Append bytes to the partial frame and deliver every complete frame (selector thread only)
+         */
+        private void readFrames(ByteBuffer buffer) {
+            if (partialFrame.remaining() < buffer.remaining()) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(partialFrame.capacity() * 2,
+                        partialFrame.position() + buffer.remaining()));
+                partialFrame.flip();
+                grown.put(partialFrame);
+                partialFrame = grown;
+            }
+            partialFrame.put(buffer);
+            partialFrame.flip();
+            while (partialFrame.remaining() >= FRAME_HEADER_BYTES) {
+                int length = partialFrame.getInt(partialFrame.position());
+                if (length <= 0 || length > BinaryCodec.MAX_FRAME_BYTES) {
+                    System.err.println("Bad frame length " + length + " from " + id + ", closing");
+                    close();
+                    return;
+                }
+                if (partialFrame.remaining() < FRAME_HEADER_BYTES + length) {
+                    break;
+                }
+                byte[] frame = new byte[length];
+                partialFrame.position(partialFrame.position() + FRAME_HEADER_BYTES);
+                partialFrame.get(frame);
+                listener.onFrame(this, ByteBuffer.wrap(frame));
+            }
+            partialFrame.compact();
+        }
+        
+        /**
+         * Write as much of the queue as the socket accepts (selector thread only)
+         */
+        void flush() {
+            try {
+                ByteBuffer next;
+                while ((next = pendingWrites.peek()) != null) {
+                    int written = channel.write(next);
+                    if (written > 0) {
+                        pendingBytes.addAndGet(-written);
+                        progressNanos = System.nanoTime();
+                    }
+                    if (next.hasRemaining()) {
+                        return; // Socket buffer full, wait for the next OP_WRITE
+                    }
+                    pendingWrites.poll();
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+        
+        /**
+         * Only ask for OP_WRITE while there is something to write (selector thread only)
+         */
+        void updateInterest() {
+            if (closed.get() || !key.isValid()) {
+                return;
+            }
+            int ops = pendingWrites.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+            if (key.interestOps() != ops) {
+                try {
+                    key.interestOps(ops);
+                } catch (IllegalStateException e) {
+                    // Key cancelled concurrently by close()
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import org.dreambot.api.methods.container.impl.Inventory;
+import org.dreambot.api.methods.container.impl.bank.Bank;
+import org.dreambot.api.methods.dialogues.Dialogues;
+import org.dreambot.api.methods.interactive.Players;
+import org.dreambot.api.methods.map.Tile;
+import org.dreambot.api.methods.skills.Skill;
+import org.dreambot.api.wrappers.interactive.Player;
+import org.dreambot.api.wrappers.items.Item;
+
+/**
+ * Immutable view of the player and inventory state read once per script loop
+ */
+public class WorldState {
+    
+    public static final int INVENTORY_SLOTS = 28;
+    
+    private final long tick;
+    private final long timestamp;
+    private final boolean playerValid;
+    private final int x;
+    private final int y;
+    private final int plane;
+    private final boolean moving;
+    private final boolean animating;
+    private final boolean bankOpen;
+    private final boolean inDialogue;
+    private final int[] skillLevels;
+    private final int[] inventoryIds;
+    private final int[] inventoryCounts;
+    private final String currentStep;
+    
+    private WorldState(long tick, boolean playerValid, int x, int y, int plane, boolean moving, boolean animating,
+                       boolean bankOpen, boolean inDialogue, int[] skillLevels, int[] inventoryIds, int[] inventoryCounts, String currentStep) {
+        this.tick = tick;
+        this.timestamp = System.currentTimeMillis();
+        this.playerValid = playerValid;
+        this.x = x;
+        this.y = y;
+        this.plane = plane;
+        this.moving = moving;
+        this.animating = animating;
+        this.bankOpen = bankOpen;
+        this.inDialogue = inDialogue;
+        this.skillLevels = skillLevels;
+        this.inventoryIds = inventoryIds;
+        this.inventoryCounts = inventoryCounts;
+        this.currentStep = currentStep;
+    }
+    
+    /**
+     * Read the current state from the DreamBot API
+     */
+    public static WorldState capture(long tick, TaskManager taskManager) {
+        Player local = Players.getLocal();
+        boolean playerValid = local != null;
+        int x = -1, y = -1, plane = -1;
+        boolean moving = false, animating = false;
+        if (playerValid) {
+            Tile tile = local.getTile();
+            x = tile.getX();
+            y = tile.getY();
+            plane = tile.getZ();
+            moving = local.isMoving();
+            animating = local.isAnimating();
+        }
+        
+        Skill[] skills = Skill.values();
+        int[] skillLevels = new int[skills.length];
+        for (int i = 0; i < skills.length; i++) {
+            try {
+                skillLevels[i] = skills[i].getLevel();
+            } catch (Exception e) {
+                skillLevels[i] = -1;
+            }
+        }
+        
+        int[] inventoryIds = new int[INVENTORY_SLOTS];
+        int[] inventoryCounts = new int[INVENTORY_SLOTS];
+        for (int slot = 0; slot < INVENTORY_SLOTS; slot++) {
+            Item item = Inventory.getItemInSlot(slot);
+            inventoryIds[slot] = item != null ? item.getID() : -1;
+            inventoryCounts[slot] = item != null ? item.getAmount() : 0;
+        }
+        
+        String currentStep = taskManager != null ? taskManager.getCurrentStep() : "";
+        return new WorldState(tick, playerValid, x, y, plane, moving, animating, Bank.isOpen(), Dialogues.inDialogue(),
+                skillLevels, inventoryIds, inventoryCounts, currentStep);
+    }
+    
+    public long getTick() {
+        return tick;
+    }
+    
+    public long getTimestamp() {
+        return timestamp;
+    }
+    
+    public boolean isPlayerValid() {
+        return playerValid;
+    }
+    
+    public int getX() {
+        return x;
+    }
+    
+    public int getY() {
+        return y;
+    }
+    
+    public int getPlane() {
+        return plane;
+    }
+    
+    public boolean isMoving() {
+        return moving;
+    }
+    
+    public boolean isAnimating() {
+        return animating;
+    }
+    
+    public boolean isBankOpen() {
+        return bankOpen;
+    }
+    
+    public boolean isInDialogue() {
+        return inDialogue;
+    }
+    
+    public int getSkillCount() {
+        return skillLevels.length;
+    }
+    
+    public int getSkillLevel(int skillIndex) {
+        return skillLevels[skillIndex];
+    }
+    
+    public int getInventoryId(int slot) {
+        return inventoryIds[slot];
+    }
+    
+    public int getInventoryCount(int slot) {
+        return inventoryCounts[slot];
+    }
+    
+    public String getCurrentStep() {
+        return currentStep;
+    }
+}
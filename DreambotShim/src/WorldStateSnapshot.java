@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Publishes a WorldState into a fixed-layout, memory-mapped file once per game tick,
+ * so clients can poll player state without an RPC round trip.
+ *
+ * All values are little-endian. Layout (byte offsets):
+ * <pre>
+ *   0  int32  magic 0x44425353 ("DBSS")
+ *   4  int32  layout version (1)
+ *   8  int64  sequence - odd while a write is in progress
+ *  16  int64  tick (game ticks since the script started)
+ *  24  int64  capture time, epoch millis
+ *  32  int32  flags: bit0 player valid, bit1 moving, bit2 animating, bit3 bank open,
+ *                bit4 in dialogue
+ *  36  int32  x
+ *  40  int32  y
+ *  44  int32  plane
+ *  48  int32  skill count (at most 32)
+ *  52  int32[32] skill levels in Skill.values() order
+ * 180  int32[28][2] inventory slots as (item id, count); id -1 for an empty slot
+ * 404  int32  current step length in bytes
+ * 408  byte[256] current step, UTF-8, truncated
+ * </pre>
+ * Readers follow the seqlock protocol: read the sequence, copy the record, read the
+ * sequence again, and retry if the two differ or the first was odd.
+ */
+public class WorldStateSnapshot {
+    
+    public static final int MAGIC = 0x44425353;
+    public static final int LAYOUT_VERSION = 1;
+    public static final int FILE_SIZE = 1024;
+    public static final String DEFAULT_PATH = "/tmp/dreambot_shim_state.bin";
+    
+    static final int OFFSET_MAGIC = 0;
+    static final int OFFSET_VERSION = 4;
+    static final int OFFSET_SEQUENCE = 8;
+    static final int OFFSET_TICK = 16;
+    static final int OFFSET_TIMESTAMP = 24;
+    static final int OFFSET_FLAGS = 32;
+    static final int OFFSET_X = 36;
+    static final int OFFSET_Y = 40;
+    static final int OFFSET_PLANE = 44;
+    static final int OFFSET_SKILL_COUNT = 48;
+    static final int OFFSET_SKILLS = 52;
+    static final int MAX_SKILLS = 32;
+    static final int OFFSET_INVENTORY = OFFSET_SKILLS + MAX_SKILLS * 4;
+    static final int OFFSET_STEP_LENGTH = OFFSET_INVENTORY + WorldState.INVENTORY_SLOTS * 8;
+    static final int OFFSET_STEP = OFFSET_STEP_LENGTH + 4;
+    static final int MAX_STEP_BYTES = 256;
+    
+    static final int FLAG_PLAYER_VALID = 1;
+    static final int FLAG_MOVING = 1 << 1;
+    static final int FLAG_ANIMATING = 1 << 2;
+    static final int FLAG_BANK_OPEN = 1 << 3;
+    static final int FLAG_IN_DIALOGUE = 1 << 4;
+    
+    private static final VarHandle LONG_VIEW =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    
+    private final Path path;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long sequence;
+    
+    public WorldStateSnapshot(String path) {
+        this.path = Paths.get(path);
+    }
+    
+    /**
+     * Create and map the snapshot file
+     */
+    public void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(OFFSET_MAGIC, MAGIC);
+        buffer.putInt(OFFSET_VERSION, LAYOUT_VERSION);
+        sequence = 0;
+        LONG_VIEW.setRelease(buffer, OFFSET_SEQUENCE, sequence);
+        System.out.println("World state snapshot mapped at " + path);
+    }
+    
+    /**
+     * Write one state record (script thread only)
+     */
+    public void publish(WorldState state) {
+        if (buffer == null) {
+            return;
+        }
+        // Odd sequence marks the record as being written
+        LONG_VIEW.setVolatile(buffer, OFFSET_SEQUENCE, ++sequence);
+        VarHandle.storeStoreFence();
+        
+        buffer.putLong(OFFSET_TICK, state.getTick());
+        buffer.putLong(OFFSET_TIMESTAMP, state.getTimestamp());
+        int flags = 0;
+        if (state.isPlayerValid()) flags |= FLAG_PLAYER_VALID;
+        if (state.isMoving()) flags |= FLAG_MOVING;
+        if (state.isAnimating()) flags |= FLAG_ANIMATING;
+        if (state.isBankOpen()) flags |= FLAG_BANK_OPEN;
+        if (state.isInDialogue()) flags |= FLAG_IN_DIALOGUE;
+        buffer.putInt(OFFSET_FLAGS, flags);
+        buffer.putInt(OFFSET_X, state.getX());
+        buffer.putInt(OFFSET_Y, state.getY());
+        buffer.putInt(OFFSET_PLANE, state.getPlane());
+        
+        int skillCount = Math.min(state.getSkillCount(), MAX_SKILLS);
+        buffer.putInt(OFFSET_SKILL_COUNT, skillCount);
+        for (int i = 0; i < skillCount; i++) {
+            buffer.putInt(OFFSET_SKILLS + i * 4, state.getSkillLevel(i));
+        }
+        
+        for (int slot = 0; slot < WorldState.INVENTORY_SLOTS; slot++) {
+            buffer.putInt(OFFSET_INVENTORY + slot * 8, state.getInventoryId(slot));
+            buffer.putInt(OFFSET_INVENTORY + slot * 8 + 4, state.getInventoryCount(slot));
+        }
+        
+        byte[] step = state.getCurrentStep() == null ? new byte[0] : state.getCurrentStep().getBytes(StandardCharsets.UTF_8);
+        int stepLength = Math.min(step.length, MAX_STEP_BYTES);
+        buffer.putInt(OFFSET_STEP_LENGTH, stepLength);
+        for (int i = 0; i < stepLength; i++) {
+            buffer.put(OFFSET_STEP + i, step[i]);
+        }
+        
+        // Even sequence publishes the completed record
+        LONG_VIEW.setRelease(buffer, OFFSET_SEQUENCE, ++sequence);
+    }
+    
+    /**
+     * Unmap and delete the snapshot file
+     */
+    public void close() {
+        buffer = null;
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("Error closing world state snapshot: " + e.getMessage());
+        }
+    }
+    
+    public String getPath() {
+        return path.toString();
+    }
+}
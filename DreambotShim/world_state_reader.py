@@ -0,0 +1,87 @@
+#!/usr/bin/env python3
+"""
+Reference reader for the memory-mapped world state snapshot published by the
+DreamBot shim (see WorldStateSnapshot.java for the layout).
+Reads state without any RPC by following the seqlock protocol.
+"""
+
+import mmap
+import struct
+import time
+
+SNAPSHOT_PATH = "/tmp/dreambot_shim_state.bin"
+MAGIC = 0x44425353
+FILE_SIZE = 1024
+INVENTORY_SLOTS = 28
+MAX_SKILLS = 32
+
+FLAG_PLAYER_VALID = 1
+FLAG_MOVING = 1 << 1
+FLAG_ANIMATING = 1 << 2
+FLAG_BANK_OPEN = 1 << 3
+FLAG_IN_DIALOGUE = 1 << 4
+
+
+def _decode(data):
+    magic, version, _seq, tick, timestamp, flags, x, y, plane, skill_count = struct.unpack_from("<iiqqqiiiii", data, 0)
+    if magic != MAGIC:
+        raise ValueError("Not a world state snapshot")
+    skills = list(struct.unpack_from("<%di" % MAX_SKILLS, data, 52))[:skill_count]
+    slots = struct.unpack_from("<%di" % (INVENTORY_SLOTS * 2), data, 180)
+    inventory = [(slots[i * 2], slots[i * 2 + 1]) for i in range(INVENTORY_SLOTS)]
+    (step_length,) = struct.unpack_from("<i", data, 404)
+    step = bytes(data[408:408 + step_length]).decode("utf-8", errors="replace")
+    return {
+        "version": version,
+        "tick": tick,
+        "timestamp": timestamp,
+        "player_valid": bool(flags & FLAG_PLAYER_VALID),
+        "moving": bool(flags & FLAG_MOVING),
+        "animating": bool(flags & FLAG_ANIMATING),
+        "bank_open": bool(flags & FLAG_BANK_OPEN),
+        "in_dialogue": bool(flags & FLAG_IN_DIALOGUE),
+        "x": x,
+        "y": y,
+        "plane": plane,
+        "skills": skills,
+        "inventory": inventory,
+        "current_step": step,
+    }
+
+
+class WorldStateReader:
+    """Maps the snapshot file once and returns consistent copies of the record."""
+
+    def __init__(self, path=SNAPSHOT_PATH):
+        self._file = open(path, "rb")
+        self._map = mmap.mmap(self._file.fileno(), FILE_SIZE, access=mmap.ACCESS_READ)
+
+    def read(self, max_retries=100):
+        for _ in range(max_retries):
+            (before,) = struct.unpack_from("<q", self._map, 8)
+            if before & 1:
+                continue  # writer in progress
+            data = self._map[:FILE_SIZE]
+            (after,) = struct.unpack_from("<q", self._map, 8)
+            if before == after:
+                return _decode(data)
+        raise RuntimeError("Snapshot kept changing while reading")
+
+    def close(self):
+        self._map.close()
+        self._file.close()
+
+
+if __name__ == "__main__":
+    reader = WorldStateReader()
+    try:
+        while True:
+            state = reader.read()
+            print(f"tick={state['tick']} pos=({state['x']}, {state['y']}, {state['plane']}) "
+                  f"moving={state['moving']} animating={state['animating']} bank_open={state['bank_open']} "
+                  f"step={state['current_step']!r}")
+            time.sleep(0.5)
+    except KeyboardInterrupt:
+        pass
+    finally:
+        reader.close()